@@ -0,0 +1,52 @@
+package pl.poznan.put.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PdbCompactFragment;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.structure.secondary.CanonicalStructureExtractor;
+import pl.poznan.put.structure.secondary.formats.BpSeq;
+import pl.poznan.put.structure.secondary.formats.InvalidSecondaryStructureException;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AnalysisBenchmark {
+    @Param({ "1EHZ.pdb", "PKB300.pdb" })
+    public String fileName;
+
+    private PdbModel model;
+
+    @Setup
+    public void setup() throws IOException, PdbParsingException {
+        model = new PdbParser(false).parse(Fixtures.read(fileName)).get(0);
+    }
+
+    @Benchmark
+    public PdbCompactFragment torsionAngles() {
+        return new PdbCompactFragment(fileName, model.getResidues());
+    }
+
+    @Benchmark
+    public BpSeq canonicalSecondaryStructure() throws InvalidSecondaryStructureException {
+        return CanonicalStructureExtractor.getCanonicalSecondaryStructure(model);
+    }
+}
@@ -0,0 +1,27 @@
+package pl.poznan.put.benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/*
+ * Test fixtures of the library, packaged into the benchmarks jar
+ */
+final class Fixtures {
+    static String read(String name) throws IOException {
+        InputStream stream = Fixtures.class.getClassLoader().getResourceAsStream(name);
+        if (stream == null) {
+            throw new IOException("Missing fixture: " + name);
+        }
+
+        try {
+            return IOUtils.toString(stream, "utf-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,55 @@
+package pl.poznan.put.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.poznan.put.pdb.PdbAtomLine;
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PdbParsingBenchmark {
+    @Param({ "1EHZ.pdb", "4A04.pdb", "PKB300.pdb" })
+    public String fileName;
+
+    private String content;
+    private PdbParser parser;
+    private List<PdbAtomLine> atoms;
+
+    /* non-strict, because PKB300.pdb has 79 character long atom lines */
+    @Setup
+    public void setup() throws IOException, PdbParsingException {
+        content = Fixtures.read(fileName);
+        parser = new PdbParser(false);
+        atoms = parser.parse(content).get(0).getAtoms();
+    }
+
+    @Benchmark
+    public List<PdbModel> parse() throws PdbParsingException {
+        return parser.parse(content);
+    }
+
+    @Benchmark
+    public PdbModel modelConstruction() throws PdbParsingException {
+        return new PdbModel(atoms);
+    }
+}
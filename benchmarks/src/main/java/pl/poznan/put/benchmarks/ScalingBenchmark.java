@@ -0,0 +1,98 @@
+package pl.poznan.put.benchmarks;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.poznan.put.pdb.PdbAtomLine;
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PdbCompactFragment;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.structure.secondary.formats.BpSeq;
+import pl.poznan.put.structure.secondary.formats.DotBracket;
+import pl.poznan.put.structure.secondary.formats.InvalidSecondaryStructureException;
+
+/*
+ * Synthetic structures of growing size (1EHZ has ~21 atoms per residue, so
+ * 25000 residues is roughly 500k atoms) to see how the costs scale
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScalingBenchmark {
+    @Param({ "1000", "5000", "25000" })
+    public int residueCount;
+
+    @Param({ "4" })
+    public int chainCount;
+
+    @Param({ "2" })
+    public int pseudoknotDepth;
+
+    @Param({ "0.01" })
+    public double missingResidueDensity;
+
+    private String pdbContent;
+    private List<PdbAtomLine> atoms;
+    private PdbModel model;
+    private BpSeq bpSeq;
+    private String dotBracketString;
+
+    @Setup
+    public void setup() throws IOException, PdbParsingException, InvalidSecondaryStructureException {
+        SyntheticStructureGenerator generator = SyntheticStructureGenerator.fromFixture("1EHZ.pdb", chainCount, pseudoknotDepth, missingResidueDensity, 1, 1L);
+        model = generator.generateModel(residueCount);
+        atoms = model.getAtoms();
+        pdbContent = model.toPdbString();
+
+        // make sure parse() measures a valid input, not the error path
+        int parsedAtomCount = new PdbParser(false).parse(pdbContent).get(0).getAtoms().size();
+        if (parsedAtomCount != atoms.size()) {
+            throw new IllegalStateException("Synthetic structure does not survive parsing, atoms: " + atoms.size() + ", parsed: " + parsedAtomCount);
+        }
+
+        bpSeq = generator.generateBpSeq(model);
+        dotBracketString = DotBracket.fromBpSeq(bpSeq).toString();
+    }
+
+    @Benchmark
+    public List<PdbModel> parse() throws PdbParsingException {
+        return new PdbParser(false).parse(pdbContent);
+    }
+
+    @Benchmark
+    public PdbModel modelConstruction() throws PdbParsingException {
+        return new PdbModel(atoms);
+    }
+
+    @Benchmark
+    public PdbCompactFragment torsionAngles() {
+        return new PdbCompactFragment("synthetic", model.getResidues());
+    }
+
+    @Benchmark
+    public DotBracket dotBracketFromBpSeq() throws InvalidSecondaryStructureException {
+        return DotBracket.fromBpSeq(bpSeq);
+    }
+
+    @Benchmark
+    public DotBracket dotBracketFromString() throws InvalidSecondaryStructureException {
+        return DotBracket.fromString(dotBracketString);
+    }
+}
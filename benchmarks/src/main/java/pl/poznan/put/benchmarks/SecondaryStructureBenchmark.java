@@ -0,0 +1,73 @@
+package pl.poznan.put.benchmarks;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pl.poznan.put.structure.secondary.formats.BpSeq;
+import pl.poznan.put.structure.secondary.formats.Ct;
+import pl.poznan.put.structure.secondary.formats.DotBracket;
+import pl.poznan.put.structure.secondary.formats.InvalidSecondaryStructureException;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SecondaryStructureBenchmark {
+    private String dotBracketString;
+    private String ctString;
+    private DotBracket dotBracket;
+    private BpSeq bpSeq;
+    private Ct ct;
+
+    @Setup
+    public void setup() throws IOException, InvalidSecondaryStructureException {
+        dotBracketString = Fixtures.read("4UG0-dotbracket.txt");
+        ctString = Fixtures.read("CRW_00528.ct");
+        dotBracket = DotBracket.fromString(dotBracketString);
+        bpSeq = BpSeq.fromDotBracket(dotBracket);
+        ct = Ct.fromString(ctString);
+    }
+
+    @Benchmark
+    public DotBracket dotBracketFromString() throws InvalidSecondaryStructureException {
+        return DotBracket.fromString(dotBracketString);
+    }
+
+    @Benchmark
+    public DotBracket dotBracketFromBpSeq() throws InvalidSecondaryStructureException {
+        return DotBracket.fromBpSeq(bpSeq);
+    }
+
+    @Benchmark
+    public Ct ctFromString() throws InvalidSecondaryStructureException {
+        return Ct.fromString(ctString);
+    }
+
+    @Benchmark
+    public Ct ctRoundTrip() throws InvalidSecondaryStructureException {
+        return Ct.fromString(ct.toString());
+    }
+
+    @Benchmark
+    public BpSeq bpSeqRoundTrip() throws InvalidSecondaryStructureException {
+        return BpSeq.fromString(bpSeq.toString());
+    }
+
+    @Benchmark
+    public Ct ctViaBpSeq() throws InvalidSecondaryStructureException {
+        return Ct.fromBpSeq(BpSeq.fromCt(ct));
+    }
+}
@@ -0,0 +1,224 @@
+package pl.poznan.put.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import pl.poznan.put.pdb.PdbAtomLine;
+import pl.poznan.put.pdb.PdbHeaderLine;
+import pl.poznan.put.pdb.PdbModresLine;
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.PdbRemark465Line;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.pdb.analysis.PdbResidue;
+import pl.poznan.put.structure.secondary.formats.BpSeq;
+import pl.poznan.put.structure.secondary.formats.DotBracket;
+import pl.poznan.put.structure.secondary.formats.InvalidSecondaryStructureException;
+
+/*
+ * Builds arbitrarily large structures out of residues of a real one. Every
+ * chain is a sequence of template residues, copied one after another and
+ * translated, so that each copy of the template occupies its own box in
+ * space. The output depends only on the parameters and the seed.
+ */
+public class SyntheticStructureGenerator {
+    private static final String CHAIN_IDENTIFIERS = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789";
+    private static final int MAX_PSEUDOKNOT_DEPTH = 29;
+    private static final int STEM_LENGTH = 4;
+    private static final int LOOP_LENGTH = 3;
+    private static final double MARGIN = 10.0;
+    private static final double MODEL_NOISE = 0.1;
+    // serial numbers and residue numbers have 5 and 4 columns in PDB format
+    private static final int SERIAL_NUMBER_LIMIT = 100000;
+    private static final int MAX_CHAIN_LENGTH = 9999;
+
+    public static SyntheticStructureGenerator fromFixture(String name,
+            int chainCount, int pseudoknotDepth, double missingResidueDensity,
+            int modelCount, long seed) throws IOException, PdbParsingException {
+        PdbModel model = new PdbParser(false).parse(Fixtures.read(name)).get(0);
+        List<PdbResidue> templates = new ArrayList<PdbResidue>();
+        for (PdbResidue residue : model.getResidues()) {
+            if (!residue.isMissing()) {
+                templates.add(residue);
+            }
+        }
+        return new SyntheticStructureGenerator(templates, chainCount, pseudoknotDepth, missingResidueDensity, modelCount, seed);
+    }
+
+    private final List<PdbResidue> templates;
+    private final int chainCount;
+    private final int pseudoknotDepth;
+    private final double missingResidueDensity;
+    private final int modelCount;
+    private final long seed;
+    private final double shiftX;
+    private final double shiftY;
+
+    public SyntheticStructureGenerator(List<PdbResidue> templates,
+            int chainCount, int pseudoknotDepth, double missingResidueDensity,
+            int modelCount, long seed) {
+        super();
+
+        if (templates.isEmpty()) {
+            throw new IllegalArgumentException("No template residues given");
+        }
+        if (chainCount < 1 || chainCount > SyntheticStructureGenerator.CHAIN_IDENTIFIERS.length()) {
+            throw new IllegalArgumentException("Chain count must be between 1 and " + SyntheticStructureGenerator.CHAIN_IDENTIFIERS.length() + ", got: " + chainCount);
+        }
+        if (pseudoknotDepth < 0 || pseudoknotDepth > SyntheticStructureGenerator.MAX_PSEUDOKNOT_DEPTH) {
+            throw new IllegalArgumentException("Pseudoknot depth must be between 0 and " + SyntheticStructureGenerator.MAX_PSEUDOKNOT_DEPTH + ", got: " + pseudoknotDepth);
+        }
+        if (missingResidueDensity < 0 || missingResidueDensity >= 1) {
+            throw new IllegalArgumentException("Missing residue density must be in [0, 1), got: " + missingResidueDensity);
+        }
+        if (modelCount < 1) {
+            throw new IllegalArgumentException("Model count must be positive, got: " + modelCount);
+        }
+
+        this.templates = templates;
+        this.chainCount = chainCount;
+        this.pseudoknotDepth = pseudoknotDepth;
+        this.missingResidueDensity = missingResidueDensity;
+        this.modelCount = modelCount;
+        this.seed = seed;
+
+        double minX = Double.POSITIVE_INFINITY;
+        double maxX = Double.NEGATIVE_INFINITY;
+        double minY = Double.POSITIVE_INFINITY;
+        double maxY = Double.NEGATIVE_INFINITY;
+        for (PdbResidue residue : templates) {
+            for (PdbAtomLine atom : residue.getAtoms()) {
+                minX = Math.min(minX, atom.getX());
+                maxX = Math.max(maxX, atom.getX());
+                minY = Math.min(minY, atom.getY());
+                maxY = Math.max(maxY, atom.getY());
+            }
+        }
+        this.shiftX = maxX - minX + SyntheticStructureGenerator.MARGIN;
+        this.shiftY = maxY - minY + SyntheticStructureGenerator.MARGIN;
+    }
+
+    /*
+     * Models with residueCount residues in total (missing ones included),
+     * split evenly between chains. If chains would be longer than residue
+     * numbers allow, more chains are used. Models after the first one differ
+     * by a small noise added to coordinates.
+     */
+    public List<PdbModel> generateModels(int residueCount) throws PdbParsingException {
+        int maxResidueCount = SyntheticStructureGenerator.CHAIN_IDENTIFIERS.length() * SyntheticStructureGenerator.MAX_CHAIN_LENGTH;
+        if (residueCount < 1 || residueCount > maxResidueCount) {
+            throw new IllegalArgumentException("Residue count must be between 1 and " + maxResidueCount + ", got: " + residueCount);
+        }
+
+        Random random = new Random(seed);
+        boolean[] isMissing = new boolean[residueCount];
+        for (int i = 0; i < residueCount; i++) {
+            isMissing[i] = random.nextDouble() < missingResidueDensity;
+        }
+
+        List<PdbModel> models = new ArrayList<PdbModel>();
+        for (int i = 0; i < modelCount; i++) {
+            models.add(generateModel(residueCount, i + 1, isMissing, random));
+        }
+        return models;
+    }
+
+    public PdbModel generateModel(int residueCount) throws PdbParsingException {
+        return generateModels(residueCount).get(0);
+    }
+
+    private PdbModel generateModel(int residueCount, int modelNumber,
+            boolean[] isMissing, Random random) throws PdbParsingException {
+        List<PdbAtomLine> atoms = new ArrayList<PdbAtomLine>();
+        List<PdbRemark465Line> missingResidues = new ArrayList<PdbRemark465Line>();
+        double noise = modelNumber == 1 ? 0 : SyntheticStructureGenerator.MODEL_NOISE;
+        int serialNumber = 1;
+        int index = 0;
+        int modelChainCount = Math.max(chainCount, (residueCount + SyntheticStructureGenerator.MAX_CHAIN_LENGTH - 1) / SyntheticStructureGenerator.MAX_CHAIN_LENGTH);
+
+        for (int chain = 0; chain < modelChainCount; chain++) {
+            char chainIdentifier = SyntheticStructureGenerator.CHAIN_IDENTIFIERS.charAt(chain);
+            int chainLength = residueCount / modelChainCount + (chain < residueCount % modelChainCount ? 1 : 0);
+
+            for (int i = 0; i < chainLength; i++, index++) {
+                PdbResidue template = templates.get(i % templates.size());
+                int residueNumber = i + 1;
+
+                if (isMissing[index]) {
+                    missingResidues.add(new PdbRemark465Line(0, template.getOriginalResidueName(), chainIdentifier, residueNumber, ' '));
+                    continue;
+                }
+
+                double dx = i / templates.size() * shiftX;
+                double dy = chain * shiftY;
+
+                for (PdbAtomLine atom : template.getAtoms()) {
+                    double x = atom.getX() + dx + noise * random.nextGaussian();
+                    double y = atom.getY() + dy + noise * random.nextGaussian();
+                    double z = atom.getZ() + noise * random.nextGaussian();
+                    atoms.add(new PdbAtomLine(serialNumber, atom.getAtomName(), ' ', atom.getResidueName(), chainIdentifier, residueNumber, ' ', x, y, z, atom.getOccupancy(), atom.getTemperatureFactor(), atom.getElementSymbol(), atom.getCharge()));
+                    // wrap around to 1 like other PDB writers do for huge structures
+                    serialNumber = serialNumber % (SyntheticStructureGenerator.SERIAL_NUMBER_LIMIT - 1) + 1;
+                }
+            }
+        }
+
+        return new PdbModel(PdbHeaderLine.emptyInstance(), modelNumber, atoms, Collections.<PdbModresLine> emptyList(), missingResidues);
+    }
+
+    /*
+     * Secondary structure of the model's residues (missing ones included)
+     * built from blocks of pseudoknotDepth + 1 stems, all crossing each
+     * other: the opening arms of all stems come first, then the closing arms
+     * in the same order. Only complementary residues of a stem are paired, so
+     * dot-bracket needs at most pseudoknotDepth + 1 bracket orders for it.
+     */
+    public BpSeq generateBpSeq(PdbModel model) throws InvalidSecondaryStructureException {
+        List<PdbResidue> residues = model.getResidues();
+        int residueCount = residues.size();
+        char[] sequence = new char[residueCount];
+        int[] pairs = new int[residueCount];
+
+        for (int i = 0; i < residueCount; i++) {
+            sequence[i] = residues.get(i).getOneLetterName();
+        }
+
+        int stems = pseudoknotDepth + 1;
+        int armLength = SyntheticStructureGenerator.STEM_LENGTH + SyntheticStructureGenerator.LOOP_LENGTH;
+        int blockLength = 2 * stems * armLength;
+
+        for (int block = 0; block + blockLength <= residueCount; block += blockLength) {
+            for (int stem = 0; stem < stems; stem++) {
+                int opening = block + stem * armLength;
+                int closing = block + (stems + stem) * armLength + SyntheticStructureGenerator.STEM_LENGTH - 1;
+
+                for (int i = 0; i < SyntheticStructureGenerator.STEM_LENGTH; i++) {
+                    int left = opening + i;
+                    int right = closing - i;
+                    if (SyntheticStructureGenerator.isComplementary(sequence[left], sequence[right])) {
+                        pairs[left] = right + 1;
+                        pairs[right] = left + 1;
+                    }
+                }
+            }
+        }
+
+        return new BpSeq(sequence, pairs);
+    }
+
+    public DotBracket generateDotBracket(PdbModel model) throws InvalidSecondaryStructureException {
+        return DotBracket.fromBpSeq(generateBpSeq(model));
+    }
+
+    /*
+     * Watson-Crick and wobble pairs, case is ignored so that modified residues
+     * pair like their standard counterparts
+     */
+    private static boolean isComplementary(char left, char right) {
+        String pair = new String(new char[] { Character.toUpperCase(left), Character.toUpperCase(right) });
+        return "AU".equals(pair) || "UA".equals(pair) || "GC".equals(pair) || "CG".equals(pair) || "GU".equals(pair) || "UG".equals(pair);
+    }
+}
@@ -29,8 +29,6 @@ public class PdbAtomLine implements Serializable, ChainNumberICode {
         79 - 80        LString(2)    charge       Charge  on the atom.
      */
     // @formatter:on
-    private static final String FORMAT_ATOM_4_CHARACTER = "ATOM  %5d %-4s%c%3s %c%4d%c   %8.3f%8.3f%8.3f%6.2f%6.2f          %2s%2s";
-    private static final String FORMAT = "ATOM  %5d  %-3s%c%3s %c%4d%c   %8.3f%8.3f%8.3f%6.2f%6.2f          %2s%2s";
     private static final String RECORD_NAME = "ATOM";
 
     public static PdbAtomLine fromBioJavaAtom(Atom atom) {
@@ -192,8 +190,135 @@ public class PdbAtomLine implements Serializable, ChainNumberICode {
 
     @Override
     public String toString() {
-        String format = atomName.length() == 4 ? PdbAtomLine.FORMAT_ATOM_4_CHARACTER : PdbAtomLine.FORMAT;
-        return String.format(Locale.US, format, serialNumber, atomName, alternateLocation, residueName, chainIdentifier, residueNumber, insertionCode, x, y, z, occupancy, temperatureFactor, elementSymbol, charge);
+        StringBuilder builder = new StringBuilder(80);
+        appendTo(builder);
+        return builder.toString();
+    }
+
+    /*
+     * Produces the same text as String.format(Locale.US, ...) with format
+     * "ATOM  %5d  %-3s%c%3s %c%4d%c   %8.3f%8.3f%8.3f%6.2f%6.2f          %2s%2s"
+     * (or with " %-4s" for 4-character atom names), but without boxing all
+     * fields and without parsing the format string for every atom.
+     */
+    public void appendTo(StringBuilder builder) {
+        builder.append(PdbAtomLine.RECORD_NAME).append("  ");
+        PdbAtomLine.appendInteger(builder, serialNumber, 5);
+
+        if (atomName.length() == 4) {
+            builder.append(' ');
+            PdbAtomLine.appendLeftAligned(builder, atomName, 4);
+        } else {
+            builder.append("  ");
+            PdbAtomLine.appendLeftAligned(builder, atomName, 3);
+        }
+
+        builder.append(alternateLocation);
+        PdbAtomLine.appendRightAligned(builder, residueName, 3);
+        builder.append(' ').append(chainIdentifier);
+        PdbAtomLine.appendInteger(builder, residueNumber, 4);
+        builder.append(insertionCode).append("   ");
+        PdbAtomLine.appendReal(builder, x, 8, 3);
+        PdbAtomLine.appendReal(builder, y, 8, 3);
+        PdbAtomLine.appendReal(builder, z, 8, 3);
+        PdbAtomLine.appendReal(builder, occupancy, 6, 2);
+        PdbAtomLine.appendReal(builder, temperatureFactor, 6, 2);
+        builder.append("          ");
+        PdbAtomLine.appendRightAligned(builder, elementSymbol, 2);
+        PdbAtomLine.appendRightAligned(builder, charge, 2);
+    }
+
+    private static void appendPadding(StringBuilder builder, int count) {
+        for (int i = 0; i < count; i++) {
+            builder.append(' ');
+        }
+    }
+
+    private static void appendLeftAligned(StringBuilder builder, String value, int width) {
+        String string = String.valueOf(value);
+        builder.append(string);
+        PdbAtomLine.appendPadding(builder, width - string.length());
+    }
+
+    private static void appendRightAligned(StringBuilder builder, String value, int width) {
+        String string = String.valueOf(value);
+        PdbAtomLine.appendPadding(builder, width - string.length());
+        builder.append(string);
+    }
+
+    /*
+     * Equivalent of %<width>d
+     */
+    private static void appendInteger(StringBuilder builder, long value, int width) {
+        long absolute = Math.abs(value);
+        long divisor = 1;
+        int length = value < 0 ? 2 : 1;
+
+        while (absolute / divisor >= 10) {
+            divisor *= 10;
+            length += 1;
+        }
+
+        PdbAtomLine.appendPadding(builder, width - length);
+        if (value < 0) {
+            builder.append('-');
+        }
+        for (; divisor > 0; divisor /= 10) {
+            builder.append((char) ('0' + absolute / divisor % 10));
+        }
+    }
+
+    /*
+     * Equivalent of %<width>.<precision>f. Values which are the closest double
+     * to a decimal with at most that many fraction digits (like everything
+     * parsed from a PDB file) are written directly. Formatter rounds the
+     * shortest decimal representation of a value, so for such values it
+     * prints exactly that decimal. Anything else goes through String.format.
+     */
+    private static void appendReal(StringBuilder builder, double value, int width, int precision) {
+        long scale = precision == 3 ? 1000 : 100;
+        double scaled = Math.rint(value * scale);
+
+        if (Math.abs(value) >= 1.0e9 || scaled / scale != value) {
+            builder.append(String.format(Locale.US, "%" + width + '.' + precision + 'f', value));
+            return;
+        }
+
+        long absolute = Math.abs((long) scaled);
+        boolean isNegative = value < 0 || Double.doubleToRawLongBits(value) < 0;
+        long integral = absolute / scale;
+        long fraction = absolute % scale;
+
+        int integralLength = 1;
+        for (long i = integral; i >= 10; i /= 10) {
+            integralLength += 1;
+        }
+
+        PdbAtomLine.appendPadding(builder, width - integralLength - precision - 1 - (isNegative ? 1 : 0));
+        if (isNegative) {
+            builder.append('-');
+        }
+        builder.append(integral).append('.');
+        for (long divisor = scale / 10; divisor > 0; divisor /= 10) {
+            builder.append((char) ('0' + fraction / divisor % 10));
+        }
+    }
+
+    /**
+     * Compare all fields of two atom lines. There is no equals() in this class
+     * on purpose, atoms are compared by reference in collections.
+     *
+     * @param other Another atom line.
+     * @return True if all fields are equal.
+     */
+    public boolean contentEquals(PdbAtomLine other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null) {
+            return false;
+        }
+        return serialNumber == other.serialNumber && alternateLocation == other.alternateLocation && chainIdentifier == other.chainIdentifier && residueNumber == other.residueNumber && insertionCode == other.insertionCode && Double.compare(x, other.x) == 0 && Double.compare(y, other.y) == 0 && Double.compare(z, other.z) == 0 && Double.compare(occupancy, other.occupancy) == 0 && Double.compare(temperatureFactor, other.temperatureFactor) == 0 && atomName.equals(other.atomName) && residueName.equals(other.residueName) && elementSymbol.equals(other.elementSymbol) && charge.equals(other.charge);
     }
 
     @Override
@@ -205,6 +330,10 @@ public class PdbAtomLine implements Serializable, ChainNumberICode {
         return new PdbAtomLine(serialNumber, atomName, alternateLocation, residueName, chainIdentifierNew, residueNumber, insertionCode, x, y, z, occupancy, temperatureFactor, elementSymbol, charge);
     }
 
+    public PdbAtomLine replaceCoordinates(double xNew, double yNew, double zNew) {
+        return new PdbAtomLine(serialNumber, atomName, alternateLocation, residueName, chainIdentifier, residueNumber, insertionCode, xNew, yNew, zNew, occupancy, temperatureFactor, elementSymbol, charge);
+    }
+
     public AtomName detectAtomName() {
         return AtomName.fromString(atomName);
     }
@@ -0,0 +1,16 @@
+package pl.poznan.put.pdb.analysis;
+
+/*
+ * Coordinates of all atoms of a Topology at one point of time (e.g. a model
+ * of an NMR ensemble or a frame of MD trajectory), in the order of
+ * Topology.getAtoms()
+ */
+public interface Frame {
+    int getAtomCount();
+
+    double getX(int atomIndex);
+
+    double getY(int atomIndex);
+
+    double getZ(int atomIndex);
+}
@@ -0,0 +1,231 @@
+package pl.poznan.put.pdb.analysis;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.List;
+
+/*
+ * Coordinates of many frames (or models) kept outside of Java heap, in
+ * a scratch file mapped into memory. Each frame takes atomCount x 3 floats or
+ * doubles and the operating system decides what stays in RAM, so huge
+ * ensembles neither grow the heap nor slow down garbage collection.
+ *
+ * Frames returned by getFrame() read the mapped memory directly. Once all
+ * frames are written, they can be read by any number of threads at once.
+ * Writing and reading the same frame concurrently is not synchronized.
+ */
+public class MappedFrameStore implements Closeable {
+    public enum Precision {
+        FLOAT(4), DOUBLE(8);
+
+        private final int size;
+
+        Precision(int size) {
+            this.size = size;
+        }
+
+        public int getSize() {
+            return size;
+        }
+    }
+
+    /*
+     * One frame per model, all models must have the same atoms as the
+     * topology. The store is backed by a temporary file.
+     */
+    public static MappedFrameStore fromModels(Topology topology, List<PdbModel> models, Precision precision) throws IOException {
+        MappedFrameStore store = new MappedFrameStore(topology.getAtomCount(), models.size(), precision);
+        for (int i = 0; i < models.size(); i++) {
+            store.setFrame(i, topology.createFrame(models.get(i)));
+        }
+        return store;
+    }
+
+    private final int atomCount;
+    private final int frameCount;
+    private final Precision precision;
+    private final File file;
+    private final boolean isTemporary;
+    private final RandomAccessFile randomAccessFile;
+
+    // a single mapping is limited to 2 GB, so frames are split into chunks
+    private final MappedByteBuffer[] chunks;
+    private final int framesPerChunk;
+    private final int frameSize;
+
+    /*
+     * Store backed by a temporary file removed on close()
+     */
+    public MappedFrameStore(int atomCount, int frameCount, Precision precision) throws IOException {
+        this(File.createTempFile("frames", ".bin"), true, atomCount, frameCount, precision);
+    }
+
+    /*
+     * Store backed by the given scratch file, which is overwritten and kept
+     */
+    public MappedFrameStore(File file, int atomCount, int frameCount, Precision precision) throws IOException {
+        this(file, false, atomCount, frameCount, precision);
+    }
+
+    private MappedFrameStore(File file, boolean isTemporary, int atomCount, int frameCount, Precision precision) throws IOException {
+        super();
+
+        long frameBytes = 3L * atomCount * precision.getSize();
+        if (atomCount < 1 || frameCount < 1 || frameBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid store size, atoms: " + atomCount + ", frames: " + frameCount);
+        }
+
+        this.atomCount = atomCount;
+        this.frameCount = frameCount;
+        this.precision = precision;
+        this.file = file;
+        this.isTemporary = isTemporary;
+        this.frameSize = (int) frameBytes;
+        this.framesPerChunk = Integer.MAX_VALUE / frameSize;
+        this.chunks = new MappedByteBuffer[(frameCount + framesPerChunk - 1) / framesPerChunk];
+        this.randomAccessFile = new RandomAccessFile(file, "rw");
+
+        try {
+            randomAccessFile.setLength((long) frameSize * frameCount);
+            FileChannel channel = randomAccessFile.getChannel();
+
+            for (int i = 0; i < chunks.length; i++) {
+                long start = (long) i * framesPerChunk * frameSize;
+                int frames = Math.min(framesPerChunk, frameCount - i * framesPerChunk);
+                chunks[i] = channel.map(MapMode.READ_WRITE, start, (long) frames * frameSize);
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    public int getAtomCount() {
+        return atomCount;
+    }
+
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public void setFrame(int frameIndex, Frame frame) {
+        if (frame.getAtomCount() != atomCount) {
+            throw new IllegalArgumentException("Expected a frame with " + atomCount + " atoms, got: " + frame.getAtomCount());
+        }
+
+        MappedByteBuffer chunk = getChunk(frameIndex);
+        int offset = getOffset(frameIndex);
+
+        for (int i = 0; i < atomCount; i++) {
+            if (precision == Precision.FLOAT) {
+                chunk.putFloat(offset, (float) frame.getX(i));
+                chunk.putFloat(offset + 4, (float) frame.getY(i));
+                chunk.putFloat(offset + 8, (float) frame.getZ(i));
+                offset += 12;
+            } else {
+                chunk.putDouble(offset, frame.getX(i));
+                chunk.putDouble(offset + 8, frame.getY(i));
+                chunk.putDouble(offset + 16, frame.getZ(i));
+                offset += 24;
+            }
+        }
+    }
+
+    /*
+     * View of the stored frame (nothing is copied)
+     */
+    public Frame getFrame(int frameIndex) {
+        return new MappedFrame(getChunk(frameIndex), getOffset(frameIndex));
+    }
+
+    /*
+     * Make sure everything is written to the file (needed only if the file is
+     * to be read by other processes)
+     */
+    public void flush() {
+        for (MappedByteBuffer chunk : chunks) {
+            if (chunk != null) {
+                chunk.force();
+            }
+        }
+    }
+
+    /*
+     * The mapping itself is released by garbage collector, so frames must not
+     * be used after closing the store
+     */
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+        if (isTemporary && !file.delete()) {
+            // some systems do not delete files which are still mapped
+            file.deleteOnExit();
+        }
+    }
+
+    private MappedByteBuffer getChunk(int frameIndex) {
+        if (frameIndex < 0 || frameIndex >= frameCount) {
+            throw new IndexOutOfBoundsException("Invalid frame index: " + frameIndex);
+        }
+        return chunks[frameIndex / framesPerChunk];
+    }
+
+    private int getOffset(int frameIndex) {
+        return frameIndex % framesPerChunk * frameSize;
+    }
+
+    /*
+     * Uses only absolute get methods, which do not change the buffer state,
+     * so the chunk can be shared between threads
+     */
+    private final class MappedFrame implements Frame {
+        private final MappedByteBuffer chunk;
+        private final int offset;
+
+        private MappedFrame(MappedByteBuffer chunk, int offset) {
+            super();
+            this.chunk = chunk;
+            this.offset = offset;
+        }
+
+        @Override
+        public int getAtomCount() {
+            return atomCount;
+        }
+
+        @Override
+        public double getX(int atomIndex) {
+            return get(atomIndex * 3);
+        }
+
+        @Override
+        public double getY(int atomIndex) {
+            return get(atomIndex * 3 + 1);
+        }
+
+        @Override
+        public double getZ(int atomIndex) {
+            return get(atomIndex * 3 + 2);
+        }
+
+        private double get(int index) {
+            if (precision == Precision.FLOAT) {
+                return chunk.getFloat(offset + index * 4);
+            }
+            return chunk.getDouble(offset + index * 8);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package pl.poznan.put.pdb.analysis;
+
+/*
+ * Frame backed by a single array of x, y, z triples
+ */
+public class PackedFrame implements Frame {
+    private final double[] coordinates;
+
+    public PackedFrame(double[] coordinates) {
+        super();
+        if (coordinates.length % 3 != 0) {
+            throw new IllegalArgumentException("Coordinates are not x, y, z triples, length: " + coordinates.length);
+        }
+        this.coordinates = coordinates;
+    }
+
+    public PackedFrame(int atomCount) {
+        this(new double[atomCount * 3]);
+    }
+
+    /*
+     * The array is shared, so that readers can fill it in place
+     */
+    public double[] getCoordinates() {
+        return coordinates;
+    }
+
+    @Override
+    public int getAtomCount() {
+        return coordinates.length / 3;
+    }
+
+    @Override
+    public double getX(int atomIndex) {
+        return coordinates[atomIndex * 3];
+    }
+
+    @Override
+    public double getY(int atomIndex) {
+        return coordinates[atomIndex * 3 + 1];
+    }
+
+    @Override
+    public double getZ(int atomIndex) {
+        return coordinates[atomIndex * 3 + 2];
+    }
+
+    public void setCoordinates(int atomIndex, double x, double y, double z) {
+        coordinates[atomIndex * 3] = x;
+        coordinates[atomIndex * 3 + 1] = y;
+        coordinates[atomIndex * 3 + 2] = z;
+    }
+
+}
@@ -0,0 +1,165 @@
+package pl.poznan.put.pdb.analysis;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pl.poznan.put.atom.AtomName;
+import pl.poznan.put.atom.AtomType;
+
+/*
+ * Filters applied by PdbParser to ATOM/HETATM lines before they are parsed.
+ * Every check looks only at a few columns of the line, so rejected lines
+ * cost almost nothing. The default instance keeps everything.
+ */
+public class ParseOptions {
+    /*
+     * How to handle atoms present in several alternate locations. To keep a
+     * specific alternate location, use setAlternateLocations() instead.
+     */
+    public enum AlternateLocationPolicy {
+        // keep all alternate locations (duplicate atoms in residues)
+        KEEP_ALL,
+        // keep the alternate location which appears first in each residue
+        FIRST,
+        // keep the alternate location with the highest mean occupancy in each residue
+        HIGHEST_OCCUPANCY
+    }
+
+    // residue names have at most three characters, so this stays small
+    private static final ConcurrentMap<String, MoleculeType> RESIDUE_NAME_TO_TYPE = new ConcurrentHashMap<String, MoleculeType>();
+
+    private Set<Character> chainIdentifiers;
+    private Set<MoleculeType> moleculeTypes;
+    private Set<Character> alternateLocations;
+    private AlternateLocationPolicy alternateLocationPolicy = AlternateLocationPolicy.KEEP_ALL;
+    private boolean includeHydrogens = true;
+    private boolean includeHetatms = true;
+
+    public Set<Character> getChainIdentifiers() {
+        return chainIdentifiers == null ? null : Collections.unmodifiableSet(chainIdentifiers);
+    }
+
+    /*
+     * Chain identifiers as written in column 22, i.e. before PdbParser renames
+     * chains repeated after TER. Null keeps all chains.
+     */
+    public void setChainIdentifiers(Collection<Character> chainIdentifiers) {
+        this.chainIdentifiers = chainIdentifiers == null ? null : new HashSet<Character>(chainIdentifiers);
+    }
+
+    public Set<MoleculeType> getMoleculeTypes() {
+        return moleculeTypes == null ? null : Collections.unmodifiableSet(moleculeTypes);
+    }
+
+    /*
+     * Residues are classified by name (or by the standard name from MODRES).
+     * Residues with unknown names are kept while parsing and classified from
+     * their atoms once the model is built. Null keeps all molecule types.
+     */
+    public void setMoleculeTypes(Collection<MoleculeType> moleculeTypes) {
+        this.moleculeTypes = moleculeTypes == null ? null : EnumSet.copyOf(moleculeTypes);
+    }
+
+    public Set<Character> getAlternateLocations() {
+        return alternateLocations == null ? null : Collections.unmodifiableSet(alternateLocations);
+    }
+
+    /*
+     * Alternate location identifiers to keep, atoms without one are always
+     * kept. Null keeps all alternate locations.
+     */
+    public void setAlternateLocations(Collection<Character> alternateLocations) {
+        this.alternateLocations = alternateLocations == null ? null : new HashSet<Character>(alternateLocations);
+    }
+
+    public AlternateLocationPolicy getAlternateLocationPolicy() {
+        return alternateLocationPolicy;
+    }
+
+    public void setAlternateLocationPolicy(AlternateLocationPolicy alternateLocationPolicy) {
+        this.alternateLocationPolicy = alternateLocationPolicy;
+    }
+
+    public boolean isIncludeHydrogens() {
+        return includeHydrogens;
+    }
+
+    public void setIncludeHydrogens(boolean includeHydrogens) {
+        this.includeHydrogens = includeHydrogens;
+    }
+
+    public boolean isIncludeHetatms() {
+        return includeHetatms;
+    }
+
+    public void setIncludeHetatms(boolean includeHetatms) {
+        this.includeHetatms = includeHetatms;
+    }
+
+    /*
+     * Check ATOM/HETATM line columns. Lines too short to be checked are
+     * accepted, so that the parser reports them as invalid.
+     */
+    boolean acceptsAtomLine(String line, Map<String, String> modifiedToStandard) {
+        if (!includeHetatms && line.startsWith("HETATM")) {
+            return false;
+        }
+        if (line.length() < 27) {
+            return true;
+        }
+        if (chainIdentifiers != null && !chainIdentifiers.contains(line.charAt(21))) {
+            return false;
+        }
+        char alternateLocation = line.charAt(16);
+        if (alternateLocations != null && alternateLocation != ' ' && !alternateLocations.contains(alternateLocation)) {
+            return false;
+        }
+        if (!includeHydrogens && ParseOptions.isHydrogen(line)) {
+            return false;
+        }
+        return moleculeTypes == null || acceptsResidueName(line.substring(17, 20).trim(), modifiedToStandard);
+    }
+
+    boolean acceptsMissingResidue(char chainIdentifier, String residueName, Map<String, String> modifiedToStandard) {
+        if (chainIdentifiers != null && !chainIdentifiers.contains(chainIdentifier)) {
+            return false;
+        }
+        return moleculeTypes == null || acceptsResidueName(residueName, modifiedToStandard);
+    }
+
+    boolean acceptsMoleculeType(MoleculeType moleculeType) {
+        return moleculeTypes == null || moleculeTypes.contains(moleculeType);
+    }
+
+    private boolean acceptsResidueName(String residueName, Map<String, String> modifiedToStandard) {
+        String standardName = modifiedToStandard.get(residueName);
+        String name = standardName == null ? residueName : standardName;
+
+        MoleculeType moleculeType = ParseOptions.RESIDUE_NAME_TO_TYPE.get(name);
+        if (moleculeType == null) {
+            moleculeType = ResidueTypeDetector.detectResidueTypeFromResidueName(name).getMoleculeType();
+            ParseOptions.RESIDUE_NAME_TO_TYPE.put(name, moleculeType);
+        }
+        return moleculeType == MoleculeType.UNKNOWN || moleculeTypes.contains(moleculeType);
+    }
+
+    /*
+     * Element symbol from columns 77-78 or, if absent, the atom name
+     */
+    private static boolean isHydrogen(String line) {
+        if (line.length() >= 78) {
+            char first = line.charAt(76);
+            char second = line.charAt(77);
+            if (first != ' ' || second != ' ') {
+                return first == ' ' && (second == 'H' || second == 'D') || second == ' ' && (first == 'H' || first == 'D');
+            }
+        }
+        return AtomName.fromString(line.substring(12, 16).trim()).getType() == AtomType.H;
+    }
+}
@@ -0,0 +1,140 @@
+package pl.poznan.put.pdb.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import pl.poznan.put.pdb.PdbParsingException;
+
+/*
+ * Diagnostics collected by PdbParser: how many lines of each record type were
+ * rejected and why, plus the first few offending lines. Nothing is allocated
+ * until the first error is recorded.
+ */
+public class ParseReport {
+    public enum RecordType {
+        ATOM("ATOM/HETATM"), REMARK_465("REMARK 465"), MODRES("MODRES"), HEADER("HEADER");
+
+        private final String displayName;
+
+        RecordType(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    private static final int DEFAULT_SAMPLE_SIZE = 10;
+
+    private final int sampleSize;
+
+    private Map<RecordType, Map<String, Integer>> errorCounts;
+    private List<String> sampleLines;
+    private int errorCount = 0;
+
+    public ParseReport(int sampleSize) {
+        super();
+        this.sampleSize = sampleSize;
+    }
+
+    public ParseReport() {
+        this(ParseReport.DEFAULT_SAMPLE_SIZE);
+    }
+
+    void addError(RecordType recordType, String line, PdbParsingException e) {
+        if (errorCounts == null) {
+            errorCounts = new EnumMap<RecordType, Map<String, Integer>>(RecordType.class);
+            sampleLines = new ArrayList<String>();
+        }
+
+        Map<String, Integer> kindCounts = errorCounts.get(recordType);
+        if (kindCounts == null) {
+            kindCounts = new LinkedHashMap<String, Integer>();
+            errorCounts.put(recordType, kindCounts);
+        }
+
+        String kind = ParseReport.errorKind(e);
+        Integer count = kindCounts.get(kind);
+        kindCounts.put(kind, count == null ? 1 : count + 1);
+
+        if (sampleLines.size() < sampleSize) {
+            sampleLines.add(line);
+        }
+        errorCount += 1;
+    }
+
+    private static String errorKind(PdbParsingException e) {
+        Throwable cause = e.getCause();
+        if (cause == null) {
+            return e.getMessage();
+        }
+        return e.getMessage() + " (" + cause.getClass().getSimpleName() + ")";
+    }
+
+    public boolean hasErrors() {
+        return errorCount > 0;
+    }
+
+    public int getErrorCount() {
+        return errorCount;
+    }
+
+    public int getErrorCount(RecordType recordType) {
+        if (errorCounts == null || !errorCounts.containsKey(recordType)) {
+            return 0;
+        }
+
+        int sum = 0;
+        for (int count : errorCounts.get(recordType).values()) {
+            sum += count;
+        }
+        return sum;
+    }
+
+    /*
+     * Error message (and the cause's class) mapped to the number of lines
+     * rejected with it
+     */
+    public Map<String, Integer> getErrorCounts(RecordType recordType) {
+        if (errorCounts == null || !errorCounts.containsKey(recordType)) {
+            return Collections.emptyMap();
+        }
+        return Collections.unmodifiableMap(errorCounts.get(recordType));
+    }
+
+    public List<String> getSampleLines() {
+        if (sampleLines == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(sampleLines);
+    }
+
+    @Override
+    public String toString() {
+        if (errorCounts == null) {
+            return "No errors";
+        }
+
+        StringBuilder builder = new StringBuilder();
+        builder.append("Rejected lines: ").append(errorCount);
+
+        for (Entry<RecordType, Map<String, Integer>> entry : errorCounts.entrySet()) {
+            for (Entry<String, Integer> kindEntry : entry.getValue().entrySet()) {
+                builder.append("\n  ").append(entry.getKey()).append(": ").append(kindEntry.getKey()).append(" x").append(kindEntry.getValue());
+            }
+        }
+
+        builder.append("\nSample lines:");
+        for (String line : sampleLines) {
+            builder.append("\n  ").append(line);
+        }
+        return builder.toString();
+    }
+}
@@ -7,7 +7,9 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
-public class PdbChain implements Comparable<PdbChain> {
+import pl.poznan.put.pdb.PdbResidueIdentifier;
+
+public class PdbChain implements Comparable<PdbChain>, ResidueCollection {
     public static PdbChain fromBioJavaChain(Chain chain) {
         List<PdbResidue> residues = new ArrayList<PdbResidue>();
         for (Group group : chain.getAtomGroups()) {
@@ -19,12 +21,15 @@ public class PdbChain implements Comparable<PdbChain> {
     private final char identifier;
     private final List<PdbResidue> residues;
     private final MoleculeType moleculeType;
+    private final ResidueIndex residueIndex;
+    private int hashCode;
 
     public PdbChain(char identifier, List<PdbResidue> residues) {
         super();
         this.identifier = identifier;
         this.residues = residues;
         this.moleculeType = PdbChain.assertMoleculeType(residues);
+        this.residueIndex = new ResidueIndex(residues);
     }
 
     private static MoleculeType assertMoleculeType(List<PdbResidue> residues) {
@@ -52,10 +57,26 @@ public class PdbChain implements Comparable<PdbChain> {
         return identifier;
     }
 
+    @Override
     public List<PdbResidue> getResidues() {
         return Collections.unmodifiableList(residues);
     }
 
+    @Override
+    public PdbResidue findResidue(char chainIdentifier, int residueNumber, char insertionCode) {
+        return findResidue(new PdbResidueIdentifier(chainIdentifier, residueNumber, insertionCode));
+    }
+
+    @Override
+    public PdbResidue findResidue(PdbResidueIdentifier query) {
+        return residueIndex.findResidue(query);
+    }
+
+    @Override
+    public int indexOf(PdbResidueIdentifier query) {
+        return residueIndex.indexOf(query);
+    }
+
     @Override
     public String toString() {
         return String.valueOf(identifier);
@@ -63,10 +84,14 @@ public class PdbChain implements Comparable<PdbChain> {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + identifier;
-        result = prime * result + (residues == null ? 0 : residues.hashCode());
+        int result = hashCode;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + identifier;
+            result = prime * result + (residues == null ? 0 : residues.hashCode());
+            hashCode = result;
+        }
         return result;
     }
 
@@ -85,6 +110,9 @@ public class PdbChain implements Comparable<PdbChain> {
         if (identifier != other.identifier) {
             return false;
         }
+        if (hashCode() != other.hashCode()) {
+            return false;
+        }
         if (residues == null) {
             if (other.residues != null) {
                 return false;
@@ -95,6 +123,23 @@ public class PdbChain implements Comparable<PdbChain> {
         return true;
     }
 
+    /**
+     * Compare two chains residue by residue with
+     * {@link PdbResidue#contentEquals(PdbResidue)}.
+     *
+     * @param other Another chain.
+     * @return True if both chains describe the same data.
+     */
+    public boolean contentEquals(PdbChain other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || identifier != other.identifier) {
+            return false;
+        }
+        return PdbResidue.contentEquals(residues, other.residues);
+    }
+
     @Override
     public int compareTo(PdbChain o) {
         return identifier < o.identifier ? -1 : identifier == o.identifier ? 0 : 1;
@@ -3,6 +3,7 @@ package pl.poznan.put.pdb.analysis;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
@@ -21,19 +22,26 @@ public class PdbCompactFragment implements ResidueCollection {
     private final String name;
     private final List<PdbResidue> residues;
     private final Map<PdbResidue, List<TorsionAngleValue>> mapResidueAngleValue = new LinkedHashMap<PdbResidue, List<TorsionAngleValue>>();
+    private final ResidueIndex residueIndex;
 
     public PdbCompactFragment(String name, List<PdbResidue> residues) {
         super();
         this.name = name;
         this.residues = residues;
+        this.residueIndex = new ResidueIndex(residues);
+
+        /* values already computed for the current residue, for derived types */
+        Map<TorsionAngleType, TorsionAngleValue> knownValues = new HashMap<TorsionAngleType, TorsionAngleValue>();
 
         for (int i = 0; i < residues.size(); i++) {
             PdbResidue residue = residues.get(i);
             List<TorsionAngleValue> values = new ArrayList<TorsionAngleValue>();
+            knownValues.clear();
 
             for (TorsionAngleType type : residue.getTorsionAngleTypes()) {
-                TorsionAngleValue value = type.calculate(residues, i);
+                TorsionAngleValue value = type.calculate(residues, i, knownValues);
                 values.add(value);
+                knownValues.put(type, value);
             }
 
             mapResidueAngleValue.put(residue, values);
@@ -56,12 +64,12 @@ public class PdbCompactFragment implements ResidueCollection {
 
     @Override
     public PdbResidue findResidue(PdbResidueIdentifier query) {
-        for (PdbResidue residue : residues) {
-            if (query.equals(residue.getResidueIdentifier())) {
-                return residue;
-            }
-        }
-        throw new IllegalArgumentException("Failed to find residue: " + query);
+        return residueIndex.findResidue(query);
+    }
+
+    @Override
+    public int indexOf(PdbResidueIdentifier query) {
+        return residueIndex.indexOf(query);
     }
 
     @Override
@@ -74,7 +82,7 @@ public class PdbCompactFragment implements ResidueCollection {
     public String toPdb() {
         StringBuilder builder = new StringBuilder();
         for (PdbResidue residue : residues) {
-            builder.append(residue.toPdb());
+            residue.appendPdb(builder);
         }
         return builder.toString();
     }
@@ -2,6 +2,7 @@ package pl.poznan.put.pdb.analysis;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -24,13 +25,13 @@ public class PdbModel implements Serializable, ResidueCollection {
 
     private final Set<PdbResidueIdentifier> missingResiduesIdentifiers = new HashSet<PdbResidueIdentifier>();
     private final Map<PdbResidueIdentifier, PdbModresLine> identifierToModification = new HashMap<PdbResidueIdentifier, PdbModresLine>();
-    private final Map<PdbResidueIdentifier, PdbResidue> identifierToResidue = new HashMap<PdbResidueIdentifier, PdbResidue>();
     private final Map<PdbResidueIdentifier, PdbChain> identifierToChain = new HashMap<PdbResidueIdentifier, PdbChain>();
 
     private final PdbHeaderLine headerLine;
     private final int modelNumber;
     private final List<PdbAtomLine> atoms;
     private final List<PdbModresLine> modifiedResidues;
+    private final ResidueIndex residueIndex;
 
     public PdbModel(List<PdbAtomLine> atoms) throws PdbParsingException {
         this(PdbHeaderLine.emptyInstance(), 1, atoms, Collections.<PdbModresLine>emptyList(), Collections.<PdbRemark465Line>emptyList());
@@ -53,9 +54,7 @@ public class PdbModel implements Serializable, ResidueCollection {
         analyzeResidues(missingResidues);
         analyzeChains();
 
-        for (PdbResidue residue : residues) {
-            identifierToResidue.put(residue.getResidueIdentifier(), residue);
-        }
+        residueIndex = new ResidueIndex(residues);
     }
 
     private void analyzeResidues(List<PdbRemark465Line> missingResidues) throws PdbParsingException {
@@ -199,11 +198,31 @@ public class PdbModel implements Serializable, ResidueCollection {
 
     @Override
     public PdbResidue findResidue(PdbResidueIdentifier query) {
-        if (!identifierToResidue.containsKey(query)) {
-            throw new IllegalArgumentException("Failed to find residue: " + query);
-        }
+        return residueIndex.findResidue(query);
+    }
 
-        return identifierToResidue.get(query);
+    @Override
+    public int indexOf(PdbResidueIdentifier query) {
+        return residueIndex.indexOf(query);
+    }
+
+    /**
+     * Compare two models residue by residue with
+     * {@link PdbResidue#contentEquals(PdbResidue)}. The equals() method is not
+     * overridden, so models are compared by reference in collections.
+     *
+     * @param other Another model.
+     * @return True if both models have the same number and describe the same
+     *         residues.
+     */
+    public boolean contentEquals(PdbModel other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || modelNumber != other.modelNumber) {
+            return false;
+        }
+        return PdbResidue.contentEquals(residues, other.residues);
     }
 
     public PdbChain findChainContainingResidue(PdbResidueIdentifier residueIdentifier) {
@@ -219,12 +238,9 @@ public class PdbModel implements Serializable, ResidueCollection {
     }
 
     public String toPdbString() {
-        StringBuilder builder = new StringBuilder();
+        StringBuilder builder = new StringBuilder(atoms.size() * 81);
         for (PdbResidue residue : residues) {
-            for (PdbAtomLine atom : residue.getAtoms()) {
-                builder.append(atom);
-                builder.append('\n');
-            }
+            residue.appendPdb(builder);
         }
         return builder.toString();
     }
@@ -239,11 +255,15 @@ public class PdbModel implements Serializable, ResidueCollection {
     }
 
     public PdbModel filteredNewInstance(MoleculeType moleculeType) throws PdbParsingException {
+        return filteredNewInstance(Collections.singleton(moleculeType));
+    }
+
+    public PdbModel filteredNewInstance(Collection<MoleculeType> moleculeTypes) throws PdbParsingException {
         List<PdbAtomLine> filteredAtoms = new ArrayList<PdbAtomLine>();
         List<PdbRemark465Line> filteredMissing = new ArrayList<PdbRemark465Line>();
 
         for (PdbResidue residue : residues) {
-            if (residue.getMoleculeType() == moleculeType) {
+            if (moleculeTypes.contains(residue.getMoleculeType())) {
                 if (!residue.isMissing()) {
                     filteredAtoms.addAll(residue.getAtoms());
                 } else {
@@ -1,7 +1,12 @@
 package pl.poznan.put.pdb.analysis;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -17,6 +22,8 @@ import pl.poznan.put.pdb.PdbHeaderLine;
 import pl.poznan.put.pdb.PdbModresLine;
 import pl.poznan.put.pdb.PdbParsingException;
 import pl.poznan.put.pdb.PdbRemark465Line;
+import pl.poznan.put.pdb.analysis.ParseOptions.AlternateLocationPolicy;
+import pl.poznan.put.pdb.analysis.ParseReport.RecordType;
 
 public class PdbParser {
     private static final Logger LOGGER = LoggerFactory.getLogger(PdbParser.class);
@@ -27,26 +34,86 @@ public class PdbParser {
     private final Set<Integer> endedModelNumbers = new HashSet<Integer>();
     private final Map<Integer, List<PdbAtomLine>> modelAtoms = new TreeMap<Integer, List<PdbAtomLine>>();
 
+    private final Map<String, String> modifiedToStandard = new HashMap<String, String>();
+
     private final boolean strictMode;
+    private final ParseOptions options;
+
+    // residue whose alternate locations are being resolved
+    private List<PdbAtomLine> alternateAtomList;
+    private int alternateResidueStart;
+    private char alternateChainIdentifier;
+    private int alternateResidueNumber;
+    private char alternateInsertionCode;
+    private char chosenAlternateLocation;
 
     private PdbHeaderLine headerLine;
+    private ParseReport report;
     private char currentChainIdentifier;
     private int currentModelNumber;
 
-    public PdbParser(boolean strictMode) {
+    public PdbParser(boolean strictMode, ParseOptions options) {
         super();
         this.strictMode = strictMode;
+        this.options = options;
+    }
+
+    public PdbParser(boolean strictMode) {
+        this(strictMode, new ParseOptions());
     }
 
     public PdbParser() {
-        super();
-        this.strictMode = true;
+        this(true);
     }
 
+    /*
+     * Invalid lines are skipped and summarized in a single warning. Use the
+     * other variant to inspect them.
+     */
     public synchronized List<PdbModel> parse(String pdbFileContent) throws PdbParsingException {
+        ParseReport parseReport = new ParseReport();
+        List<PdbModel> result = parse(pdbFileContent, parseReport);
+
+        if (parseReport.hasErrors()) {
+            PdbParser.LOGGER.warn(parseReport.toString());
+        }
+        return result;
+    }
+
+    public synchronized List<PdbModel> parse(Reader reader) throws IOException, PdbParsingException {
+        ParseReport parseReport = new ParseReport();
+        List<PdbModel> result = parse(reader, parseReport);
+
+        if (parseReport.hasErrors()) {
+            PdbParser.LOGGER.warn(parseReport.toString());
+        }
+        return result;
+    }
+
+    /*
+     * Invalid lines are skipped and recorded in the given report (errors are
+     * added to the ones already in it).
+     */
+    public synchronized List<PdbModel> parse(String pdbFileContent, ParseReport parseReport) throws PdbParsingException {
+        try {
+            return parse(new StringReader(pdbFileContent), parseReport);
+        } catch (IOException e) {
+            throw new PdbParsingException("Failed to read PDB content", e);
+        }
+    }
+
+    /*
+     * Parse the content as it is being read, without keeping it in memory as
+     * a whole
+     */
+    public synchronized List<PdbModel> parse(Reader reader, ParseReport parseReport) throws IOException, PdbParsingException {
         resetState();
+        report = parseReport;
 
-        for (String line : pdbFileContent.split("\n")) {
+        LineReader lineReader = new LineReader(reader);
+        String line;
+
+        while ((line = lineReader.readLine()) != null) {
             if (line.startsWith("MODEL")) {
                 handleModelLine(line);
             } else if (line.startsWith("ATOM") || line.startsWith("HETATM")) {
@@ -61,6 +128,7 @@ public class PdbParser {
                 handleHeaderLine(line);
             }
         }
+        finishAlternateLocations();
 
         List<PdbModel> result = new ArrayList<PdbModel>();
 
@@ -68,18 +136,49 @@ public class PdbParser {
             int modelNumber = entry.getKey();
             List<PdbAtomLine> atoms = entry.getValue();
             PdbModel pdbModel = new PdbModel(headerLine, modelNumber, atoms, modifiedResidues, missingResidues);
+
+            if (!hasOnlyAcceptedMoleculeTypes(pdbModel)) {
+                // residues with unknown names are classified only now
+                if (!hasAcceptedAtoms(pdbModel)) {
+                    continue;
+                }
+                pdbModel = pdbModel.filteredNewInstance(options.getMoleculeTypes());
+            }
             result.add(pdbModel);
         }
 
         return result;
     }
 
+    private boolean hasOnlyAcceptedMoleculeTypes(PdbModel pdbModel) {
+        if (options.getMoleculeTypes() == null) {
+            return true;
+        }
+        for (PdbResidue residue : pdbModel.getResidues()) {
+            if (!options.acceptsMoleculeType(residue.getMoleculeType())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasAcceptedAtoms(PdbModel pdbModel) {
+        for (PdbResidue residue : pdbModel.getResidues()) {
+            if (!residue.isMissing() && options.acceptsMoleculeType(residue.getMoleculeType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private void resetState() {
         modifiedResidues.clear();
+        modifiedToStandard.clear();
         missingResidues.clear();
         terminatedChainIdentifiers.clear();
         endedModelNumbers.clear();
         modelAtoms.clear();
+        alternateAtomList = null;
 
         // on default, the ' ' chain id is terminated
         terminatedChainIdentifiers.add(' ');
@@ -115,6 +214,10 @@ public class PdbParser {
     }
 
     private void handleAtomLine(String line) {
+        if (!options.acceptsAtomLine(line, modifiedToStandard)) {
+            return;
+        }
+
         try {
             PdbAtomLine atomLine = PdbAtomLine.parse(line, strictMode);
 
@@ -127,12 +230,93 @@ public class PdbParser {
             }
 
             List<PdbAtomLine> atomList = modelAtoms.get(currentModelNumber);
-            atomList.add(atomLine);
+            if (options.getAlternateLocationPolicy() == AlternateLocationPolicy.KEEP_ALL || resolveAlternateLocation(atomLine, atomList)) {
+                atomList.add(atomLine);
+            }
         } catch (PdbParsingException e) {
-            LOGGER.warn("Invalid ATOM line: " + line, e);
+            reportError(RecordType.ATOM, line, e);
         }
     }
 
+    /*
+     * Alternate locations of a residue are listed together, so only atoms of
+     * the current residue are tracked. Returns false if the atom should not
+     * be added.
+     */
+    private boolean resolveAlternateLocation(PdbAtomLine atomLine, List<PdbAtomLine> atomList) {
+        if (atomList != alternateAtomList || atomLine.getChainIdentifier() != alternateChainIdentifier || atomLine.getResidueNumber() != alternateResidueNumber || atomLine.getInsertionCode() != alternateInsertionCode) {
+            finishAlternateLocations();
+            alternateAtomList = atomList;
+            alternateResidueStart = atomList.size();
+            alternateChainIdentifier = atomLine.getChainIdentifier();
+            alternateResidueNumber = atomLine.getResidueNumber();
+            alternateInsertionCode = atomLine.getInsertionCode();
+            chosenAlternateLocation = ' ';
+        }
+
+        char alternateLocation = atomLine.getAlternateLocation();
+        if (alternateLocation == ' ' || options.getAlternateLocationPolicy() == AlternateLocationPolicy.HIGHEST_OCCUPANCY) {
+            // occupancies are compared when the whole residue is read
+            return true;
+        }
+
+        if (chosenAlternateLocation == ' ') {
+            chosenAlternateLocation = alternateLocation;
+        }
+        return alternateLocation == chosenAlternateLocation;
+    }
+
+    /*
+     * Keep only the alternate location with the highest mean occupancy (the
+     * first one on ties) in the residue which has just been read, so that all
+     * its atoms come from a single conformer
+     */
+    private void finishAlternateLocations() {
+        if (alternateAtomList == null || options.getAlternateLocationPolicy() != AlternateLocationPolicy.HIGHEST_OCCUPANCY) {
+            return;
+        }
+
+        List<PdbAtomLine> residueAtoms = alternateAtomList.subList(alternateResidueStart, alternateAtomList.size());
+        Map<Character, double[]> occupancies = new LinkedHashMap<Character, double[]>();
+        for (PdbAtomLine atom : residueAtoms) {
+            char alternateLocation = atom.getAlternateLocation();
+            if (alternateLocation == ' ') {
+                continue;
+            }
+
+            double[] sumAndCount = occupancies.get(alternateLocation);
+            if (sumAndCount == null) {
+                sumAndCount = new double[2];
+                occupancies.put(alternateLocation, sumAndCount);
+            }
+            sumAndCount[0] += atom.getOccupancy();
+            sumAndCount[1] += 1;
+        }
+
+        if (occupancies.size() < 2) {
+            return;
+        }
+
+        char best = ' ';
+        double bestOccupancy = Double.NEGATIVE_INFINITY;
+        for (Entry<Character, double[]> entry : occupancies.entrySet()) {
+            double occupancy = entry.getValue()[0] / entry.getValue()[1];
+            if (occupancy > bestOccupancy) {
+                best = entry.getKey();
+                bestOccupancy = occupancy;
+            }
+        }
+
+        List<PdbAtomLine> kept = new ArrayList<PdbAtomLine>(residueAtoms.size());
+        for (PdbAtomLine atom : residueAtoms) {
+            if (atom.getAlternateLocation() == ' ' || atom.getAlternateLocation() == best) {
+                kept.add(atom);
+            }
+        }
+        residueAtoms.clear();
+        residueAtoms.addAll(kept);
+    }
+
     private void handleMissingResidueLine(String line) {
         try {
             if (PdbRemark465Line.isCommentLine(line)) {
@@ -140,9 +324,11 @@ public class PdbParser {
             }
 
             PdbRemark465Line remark465Line = PdbRemark465Line.parse(line);
-            missingResidues.add(remark465Line);
+            if (options.acceptsMissingResidue(remark465Line.getChainIdentifier(), remark465Line.getResidueName(), modifiedToStandard)) {
+                missingResidues.add(remark465Line);
+            }
         } catch (PdbParsingException e) {
-            LOGGER.warn("Invalid REMARK 465 line: " + line, e);
+            reportError(RecordType.REMARK_465, line, e);
         }
     }
 
@@ -150,8 +336,9 @@ public class PdbParser {
         try {
             PdbModresLine modresLine = PdbModresLine.parse(line);
             modifiedResidues.add(modresLine);
+            modifiedToStandard.put(modresLine.getResidueName(), modresLine.getStandardResidueName());
         } catch (PdbParsingException e) {
-            LOGGER.warn("Invalid MODRES line: " + line, e);
+            reportError(RecordType.MODRES, line, e);
         }
     }
 
@@ -159,7 +346,60 @@ public class PdbParser {
         try {
             headerLine = PdbHeaderLine.parse(line);
         } catch (PdbParsingException e) {
-            LOGGER.warn("Invalid HEADER line: " + line, e);
+            reportError(RecordType.HEADER, line, e);
+        }
+    }
+
+    private void reportError(RecordType recordType, String line, PdbParsingException e) {
+        report.addError(recordType, line, e);
+
+        if (PdbParser.LOGGER.isDebugEnabled()) {
+            PdbParser.LOGGER.debug("Invalid " + recordType + " line: " + line, e);
+        }
+    }
+
+    /*
+     * Splits on '\n' only, so that lines are exactly the same as the ones
+     * from String.split("\n") (e.g. '\r' is kept)
+     */
+    private static final class LineReader {
+        private final Reader reader;
+        private final char[] buffer = new char[8192];
+        private final StringBuilder line = new StringBuilder(128);
+        private int length = 0;
+        private int position = 0;
+
+        private LineReader(Reader reader) {
+            super();
+            this.reader = reader;
+        }
+
+        private String readLine() throws IOException {
+            line.setLength(0);
+
+            while (true) {
+                if (position == length) {
+                    length = reader.read(buffer, 0, buffer.length);
+                    position = 0;
+
+                    if (length < 0) {
+                        length = 0;
+                        return line.length() > 0 ? line.toString() : null;
+                    }
+                }
+
+                int from = position;
+                while (position < length && buffer[position] != '\n') {
+                    position += 1;
+                }
+                line.append(buffer, from, position - from);
+
+                if (position < length) {
+                    // skip '\n'
+                    position += 1;
+                    return line.toString();
+                }
+            }
         }
     }
 }
@@ -48,6 +48,7 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
     private final List<PdbAtomLine> atoms;
     private final boolean isModified;
     private final boolean isMissing;
+    private transient int hashCode;
 
     public PdbResidue(PdbResidueIdentifier identifier, String residueName,
                       String modifiedResidueName, List<PdbAtomLine> atoms,
@@ -74,6 +75,27 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
         this(identifier, residueName, residueName, atoms, false, isMissing);
     }
 
+    /*
+     * Copy of the template with other atoms (the same names in the same order,
+     * e.g. from another frame of a trajectory), without detecting anything
+     * again
+     */
+    private PdbResidue(PdbResidue template, List<PdbAtomLine> atoms) {
+        super();
+        this.identifier = template.identifier;
+        this.residueName = template.residueName;
+        this.modifiedResidueName = template.modifiedResidueName;
+        this.atoms = atoms;
+        this.isMissing = template.isMissing;
+        this.atomNames = template.atomNames;
+        this.residueInformationProvider = template.residueInformationProvider;
+        this.isModified = template.isModified;
+    }
+
+    PdbResidue replaceAtoms(List<PdbAtomLine> atomsNew) {
+        return new PdbResidue(this, atomsNew);
+    }
+
     private List<AtomName> detectAtomNames() {
         List<AtomName> result = new ArrayList<AtomName>();
         for (PdbAtomLine atom : atoms) {
@@ -86,6 +108,13 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
         return Collections.unmodifiableList(atoms);
     }
 
+    /*
+     * Atom names detected for getAtoms(), in the same order
+     */
+    public List<AtomName> getAtomNames() {
+        return Collections.unmodifiableList(atomNames);
+    }
+
     @Override
     public PdbResidueIdentifier getResidueIdentifier() {
         return identifier;
@@ -151,17 +180,25 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
         return chainIdentifier + "." + modifiedResidueName + residueNumber + (insertionCode != ' ' ? insertionCode : "");
     }
 
+    /*
+     * The hash uses only the cheap fields and is computed once. The atom list
+     * takes part in equals(), but since atoms are compared by reference it is
+     * checked last. Use contentEquals() to compare atoms by their values.
+     */
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + (atomNames == null ? 0 : atomNames.hashCode());
-        result = prime * result + (atoms == null ? 0 : atoms.hashCode());
-        result = prime * result + (identifier == null ? 0 : identifier.hashCode());
-        result = prime * result + (isMissing ? 1231 : 1237);
-        result = prime * result + (isModified ? 1231 : 1237);
-        result = prime * result + (modifiedResidueName == null ? 0 : modifiedResidueName.hashCode());
-        result = prime * result + (residueName == null ? 0 : residueName.hashCode());
+        int result = hashCode;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + (atoms == null ? 0 : atoms.size());
+            result = prime * result + (identifier == null ? 0 : identifier.hashCode());
+            result = prime * result + (isMissing ? 1231 : 1237);
+            result = prime * result + (isModified ? 1231 : 1237);
+            result = prime * result + (modifiedResidueName == null ? 0 : modifiedResidueName.hashCode());
+            result = prime * result + (residueName == null ? 0 : residueName.hashCode());
+            hashCode = result;
+        }
         return result;
     }
 
@@ -177,11 +214,10 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
             return false;
         }
         PdbResidue other = (PdbResidue) obj;
-        if (atomNames == null) {
-            if (other.atomNames != null) {
-                return false;
-            }
-        } else if (!atomNames.equals(other.atomNames)) {
+        if (hashCode != 0 && other.hashCode != 0 && hashCode != other.hashCode) {
+            return false;
+        }
+        if (!equalsWithoutAtoms(other)) {
             return false;
         }
         if (atoms == null) {
@@ -191,6 +227,46 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
         } else if (!atoms.equals(other.atoms)) {
             return false;
         }
+        // atom names are detected from atoms, so they are equal as well
+        return true;
+    }
+
+    /**
+     * Compare two residues by value, including all fields of their atoms.
+     * Unlike {@link #equals(Object)} this returns true for residues coming from
+     * different parses of the same data.
+     *
+     * @param other Another residue.
+     * @return True if both residues describe the same data.
+     */
+    public boolean contentEquals(PdbResidue other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || !equalsWithoutAtoms(other) || atoms.size() != other.atoms.size()) {
+            return false;
+        }
+        for (int i = 0; i < atoms.size(); i++) {
+            if (!atoms.get(i).contentEquals(other.atoms.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean contentEquals(List<PdbResidue> left, List<PdbResidue> right) {
+        if (left.size() != right.size()) {
+            return false;
+        }
+        for (int i = 0; i < left.size(); i++) {
+            if (!left.get(i).contentEquals(right.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean equalsWithoutAtoms(PdbResidue other) {
         if (identifier == null) {
             if (other.identifier != null) {
                 return false;
@@ -227,7 +303,23 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
     }
 
     public boolean hasAtom(AtomName atomName) {
-        return atomNames.contains(atomName);
+        return indexOfAtom(atomName) != -1;
+    }
+
+    /*
+     * Index in getAtoms() of the first atom with the given name or -1
+     */
+    public int indexOfAtom(AtomName atomName) {
+        for (int i = 0, size = atomNames.size(); i < size; i++) {
+            if (atomNames.get(i) == atomName) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public PdbAtomLine getAtom(int index) {
+        return atoms.get(index);
     }
 
     public final boolean hasHydrogen() {
@@ -269,10 +361,9 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
     }
 
     public PdbAtomLine findAtom(AtomName atomName) {
-        for (PdbAtomLine atom : atoms) {
-            if (atom.detectAtomName() == atomName) {
-                return atom;
-            }
+        int index = indexOfAtom(atomName);
+        if (index != -1) {
+            return atoms.get(index);
         }
 
         throw new IllegalArgumentException("Failed to find: " + atomName);
@@ -295,11 +386,15 @@ public class PdbResidue implements Serializable, Comparable<PdbResidue>, ChainNu
     }
 
     public String toPdb() {
-        StringBuilder builder = new StringBuilder();
+        StringBuilder builder = new StringBuilder(atoms.size() * 81);
+        appendPdb(builder);
+        return builder.toString();
+    }
+
+    void appendPdb(StringBuilder builder) {
         for (PdbAtomLine atom : atoms) {
-            builder.append(atom.toString());
+            atom.appendTo(builder);
             builder.append('\n');
         }
-        return builder.toString();
     }
 }
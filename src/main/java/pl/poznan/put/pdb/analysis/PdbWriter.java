@@ -0,0 +1,59 @@
+package pl.poznan.put.pdb.analysis;
+
+import java.io.BufferedWriter;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import pl.poznan.put.pdb.PdbAtomLine;
+
+/**
+ * Streams atoms in PDB format to a {@link Writer}, {@link OutputStream} or any
+ * other {@link Appendable}. The output is the same as the one of
+ * {@link PdbModel#toPdbString()}, but the whole file is never kept in memory.
+ * When writing to an {@link OutputStream}, call {@link #flush()} at the end.
+ */
+public class PdbWriter implements Flushable {
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final Appendable output;
+    private final StringBuilder line = new StringBuilder(81);
+
+    public PdbWriter(Appendable output) {
+        super();
+        this.output = output;
+    }
+
+    public PdbWriter(OutputStream stream) {
+        this(new BufferedWriter(new OutputStreamWriter(stream, PdbWriter.ASCII)));
+    }
+
+    public void write(PdbAtomLine atom) throws IOException {
+        line.setLength(0);
+        atom.appendTo(line);
+        line.append('\n');
+        output.append(line);
+    }
+
+    public void write(PdbResidue residue) throws IOException {
+        for (PdbAtomLine atom : residue.getAtoms()) {
+            write(atom);
+        }
+    }
+
+    public void write(ResidueCollection residueCollection) throws IOException {
+        for (PdbResidue residue : residueCollection.getResidues()) {
+            write(residue);
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (output instanceof Flushable) {
+            ((Flushable) output).flush();
+        }
+    }
+}
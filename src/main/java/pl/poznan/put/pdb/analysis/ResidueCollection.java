@@ -10,4 +10,11 @@ public interface ResidueCollection {
     PdbResidue findResidue(char chainIdentifier, int residueNumber, char insertionCode);
 
     PdbResidue findResidue(PdbResidueIdentifier query);
+
+    /*
+     * Position of the residue in getResidues() or -1 if it is not present. If
+     * the identifier occurs more than once, the first position is returned
+     * and findResidue() must return the residue at that position.
+     */
+    int indexOf(PdbResidueIdentifier query);
 }
@@ -0,0 +1,155 @@
+package pl.poznan.put.pdb.analysis;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.commons.collections4.Predicate;
+
+import pl.poznan.put.pdb.PdbResidueIdentifier;
+
+/*
+ * Subset of another collection of residues which shares its residues and its
+ * index. Creating a view costs nothing, residues are neither copied nor
+ * analyzed again. A view selected by a predicate builds its list of residues
+ * on first use of getResidues() or indexOf(), while findResidue() is always
+ * answered by the parent's index.
+ */
+public class ResidueCollectionView implements ResidueCollection {
+    public static ResidueCollectionView ofChain(ResidueCollection parent, final char chainIdentifier) {
+        return new ResidueCollectionView(parent, new Predicate<PdbResidue>() {
+            @Override
+            public boolean evaluate(PdbResidue residue) {
+                return residue.getChainIdentifier() == chainIdentifier;
+            }
+        });
+    }
+
+    public static ResidueCollectionView ofMoleculeType(ResidueCollection parent, final MoleculeType moleculeType) {
+        return new ResidueCollectionView(parent, new Predicate<PdbResidue>() {
+            @Override
+            public boolean evaluate(PdbResidue residue) {
+                return residue.getMoleculeType() == moleculeType;
+            }
+        });
+    }
+
+    /*
+     * Residues from first to last (both inclusive) in the order of the parent
+     */
+    public static ResidueCollectionView ofRange(ResidueCollection parent, PdbResidueIdentifier first, PdbResidueIdentifier last) {
+        int from = parent.indexOf(first);
+        int to = parent.indexOf(last);
+        if (from == -1 || to == -1 || from > to) {
+            throw new IllegalArgumentException("Invalid residue range: " + first + " - " + last);
+        }
+        return new ResidueCollectionView(parent, from, to + 1, null);
+    }
+
+    private final ResidueCollection parent;
+    private final List<PdbResidue> parentResidues;
+    private final int from;
+    private final int to;
+    private final Predicate<PdbResidue> predicate;
+
+    // built lazily for views with a predicate
+    private List<PdbResidue> residues;
+    private int[] positions;
+
+    public ResidueCollectionView(ResidueCollection parent, Predicate<PdbResidue> predicate) {
+        this(parent, 0, parent.getResidues().size(), predicate);
+    }
+
+    private ResidueCollectionView(ResidueCollection parent, int from, int to, Predicate<PdbResidue> predicate) {
+        super();
+        this.parent = parent;
+        this.parentResidues = parent.getResidues();
+        this.from = from;
+        this.to = to;
+        this.predicate = predicate;
+    }
+
+    public ResidueCollection getParent() {
+        return parent;
+    }
+
+    @Override
+    public List<PdbResidue> getResidues() {
+        if (predicate == null) {
+            return Collections.unmodifiableList(parentResidues.subList(from, to));
+        }
+        select();
+        return residues;
+    }
+
+    @Override
+    public PdbResidue findResidue(char chainIdentifier, int residueNumber, char insertionCode) {
+        return findResidue(new PdbResidueIdentifier(chainIdentifier, residueNumber, insertionCode));
+    }
+
+    @Override
+    public PdbResidue findResidue(PdbResidueIdentifier query) {
+        int index = parent.indexOf(query);
+        if (index < from || index >= to) {
+            throw new IllegalArgumentException("Failed to find residue: " + query);
+        }
+
+        PdbResidue residue = parentResidues.get(index);
+        if (predicate != null && !predicate.evaluate(residue)) {
+            throw new IllegalArgumentException("Failed to find residue: " + query);
+        }
+        return residue;
+    }
+
+    @Override
+    public int indexOf(PdbResidueIdentifier query) {
+        int index = parent.indexOf(query);
+        if (index < from || index >= to) {
+            return -1;
+        }
+        if (predicate == null) {
+            return index - from;
+        }
+        select();
+        return positions[index - from];
+    }
+
+    public String getSequence() {
+        StringBuilder builder = new StringBuilder();
+        for (PdbResidue residue : getResidues()) {
+            builder.append(residue.getOneLetterName());
+        }
+        return builder.toString();
+    }
+
+    public int size() {
+        return getResidues().size();
+    }
+
+    @Override
+    public String toString() {
+        return getResidues().toString();
+    }
+
+    private synchronized void select() {
+        if (residues != null) {
+            return;
+        }
+
+        List<PdbResidue> selected = new ArrayList<PdbResidue>();
+        int[] selectedPositions = new int[to - from];
+        Arrays.fill(selectedPositions, -1);
+
+        for (int i = from; i < to; i++) {
+            PdbResidue residue = parentResidues.get(i);
+            if (predicate.evaluate(residue)) {
+                selectedPositions[i - from] = selected.size();
+                selected.add(residue);
+            }
+        }
+
+        positions = selectedPositions;
+        residues = Collections.unmodifiableList(selected);
+    }
+}
@@ -0,0 +1,42 @@
+package pl.poznan.put.pdb.analysis;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.poznan.put.pdb.PdbResidueIdentifier;
+
+/*
+ * Maps residue identifiers to positions on a list of residues, so that
+ * implementations of ResidueCollection can find residues and their indices in
+ * constant time. If an identifier occurs more than once, the first occurrence
+ * is used.
+ */
+public class ResidueIndex implements Serializable {
+    private final List<PdbResidue> residues;
+    private final Map<PdbResidueIdentifier, Integer> identifierToIndex;
+
+    public ResidueIndex(List<PdbResidue> residues) {
+        super();
+        this.residues = residues;
+        this.identifierToIndex = new HashMap<PdbResidueIdentifier, Integer>(residues.size() * 4 / 3 + 1);
+
+        for (int i = residues.size() - 1; i >= 0; i--) {
+            identifierToIndex.put(residues.get(i).getResidueIdentifier(), i);
+        }
+    }
+
+    public int indexOf(PdbResidueIdentifier query) {
+        Integer index = identifierToIndex.get(query);
+        return index != null ? index : -1;
+    }
+
+    public PdbResidue findResidue(PdbResidueIdentifier query) {
+        Integer index = identifierToIndex.get(query);
+        if (index == null) {
+            throw new IllegalArgumentException("Failed to find residue: " + query);
+        }
+        return residues.get(index);
+    }
+}
@@ -0,0 +1,237 @@
+package pl.poznan.put.pdb.analysis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import pl.poznan.put.atom.AtomName;
+import pl.poznan.put.pdb.PdbAtomLine;
+import pl.poznan.put.pdb.PdbResidueIdentifier;
+import pl.poznan.put.torsion.AtomBasedTorsionAngleType;
+import pl.poznan.put.torsion.TorsionAnglesHelper;
+
+/*
+ * Everything about a model which does not change between frames of a
+ * trajectory: residues with detected types, atom names, chains and lookup
+ * plans for torsion angles. It is computed once from a reference model and
+ * then any number of Frames with coordinates can be analyzed with no further
+ * residue detection or atom name resolution.
+ */
+public class Topology {
+    private final PdbModel model;
+    private final List<PdbAtomLine> atoms;
+    // index in atoms of the first atom of each residue (-1 for missing ones)
+    private final int[] residueAtomStarts;
+    private final Map<AtomBasedTorsionAngleType, int[]> torsionPlans = new ConcurrentHashMap<AtomBasedTorsionAngleType, int[]>();
+
+    public Topology(PdbModel model) {
+        super();
+        this.model = model;
+        this.atoms = model.getAtoms();
+
+        Map<PdbAtomLine, Integer> atomToIndex = new IdentityHashMap<PdbAtomLine, Integer>(atoms.size());
+        for (int i = 0; i < atoms.size(); i++) {
+            atomToIndex.put(atoms.get(i), i);
+        }
+
+        List<PdbResidue> residues = model.getResidues();
+        residueAtomStarts = new int[residues.size()];
+
+        for (int i = 0; i < residues.size(); i++) {
+            List<PdbAtomLine> residueAtoms = residues.get(i).getAtoms();
+            residueAtomStarts[i] = residueAtoms.isEmpty() ? -1 : atomToIndex.get(residueAtoms.get(0));
+
+            // frames are read by atom index, so residues must be contiguous
+            for (int j = 1; j < residueAtoms.size(); j++) {
+                if (atomToIndex.get(residueAtoms.get(j)) != residueAtomStarts[i] + j) {
+                    throw new IllegalArgumentException("Atoms of residue " + residues.get(i) + " are not contiguous");
+                }
+            }
+        }
+    }
+
+    public PdbModel getModel() {
+        return model;
+    }
+
+    public List<PdbResidue> getResidues() {
+        return model.getResidues();
+    }
+
+    public List<PdbChain> getChains() {
+        return model.getChains();
+    }
+
+    public List<PdbAtomLine> getAtoms() {
+        return atoms;
+    }
+
+    public int getAtomCount() {
+        return atoms.size();
+    }
+
+    /*
+     * Index in getAtoms() and in frames of the given atom of the given residue
+     * or -1 if there is no such atom
+     */
+    public int getAtomIndex(int residueIndex, AtomName atomName) {
+        if (residueIndex < 0 || residueIndex >= residueAtomStarts.length || residueAtomStarts[residueIndex] == -1) {
+            return -1;
+        }
+        int atomIndex = getResidues().get(residueIndex).indexOfAtom(atomName);
+        return atomIndex == -1 ? -1 : residueAtomStarts[residueIndex] + atomIndex;
+    }
+
+    /*
+     * Frame with coordinates of the reference model
+     */
+    public PackedFrame getReferenceFrame() {
+        return createFrame(model);
+    }
+
+    /*
+     * Frame with coordinates of another model with the same atoms in the same
+     * order, e.g. another model from the same NMR ensemble
+     */
+    public PackedFrame createFrame(PdbModel other) {
+        List<PdbAtomLine> otherAtoms = other.getAtoms();
+        if (otherAtoms.size() != atoms.size()) {
+            throw new IllegalArgumentException("Expected " + atoms.size() + " atoms, got: " + otherAtoms.size());
+        }
+
+        PackedFrame frame = new PackedFrame(atoms.size());
+        for (int i = 0; i < otherAtoms.size(); i++) {
+            PdbAtomLine atom = otherAtoms.get(i);
+            frame.setCoordinates(i, atom.getX(), atom.getY(), atom.getZ());
+        }
+        return frame;
+    }
+
+    /*
+     * Atom indices for the torsion angle type, four per residue, -1 where the
+     * angle cannot be calculated
+     */
+    public int[] getTorsionPlan(AtomBasedTorsionAngleType angleType) {
+        int[] plan = torsionPlans.get(angleType);
+        if (plan != null) {
+            return plan;
+        }
+
+        int residueCount = residueAtomStarts.length;
+        plan = new int[residueCount * 4];
+
+        for (int i = 0; i < residueCount; i++) {
+            for (int j = 0; j < 4; j++) {
+                plan[i * 4 + j] = getAtomIndex(i + angleType.getResidueRule().get(j), angleType.getAtoms().get(j));
+            }
+            if (plan[i * 4] == -1 || plan[i * 4 + 1] == -1 || plan[i * 4 + 2] == -1 || plan[i * 4 + 3] == -1) {
+                plan[i * 4] = -1;
+            }
+        }
+
+        torsionPlans.put(angleType, plan);
+        return plan;
+    }
+
+    /*
+     * Values of the torsion angle in radians for every residue in the frame,
+     * NaN where it cannot be calculated. The values are the same as from
+     * AtomBasedTorsionAngleType.calculate() on residues of the frame.
+     */
+    public double[] calculateTorsionAngles(Frame frame, AtomBasedTorsionAngleType angleType) {
+        checkFrame(frame);
+        int[] plan = getTorsionPlan(angleType);
+        double[] result = new double[residueAtomStarts.length];
+
+        for (int i = 0; i < result.length; i++) {
+            int a1 = plan[i * 4];
+            if (a1 == -1) {
+                result[i] = Double.NaN;
+                continue;
+            }
+
+            int a2 = plan[i * 4 + 1];
+            int a3 = plan[i * 4 + 2];
+            int a4 = plan[i * 4 + 3];
+            result[i] = TorsionAnglesHelper.calculateTorsionAtan(frame.getX(a1), frame.getY(a1), frame.getZ(a1), frame.getX(a2), frame.getY(a2), frame.getZ(a2), frame.getX(a3), frame.getY(a3), frame.getZ(a3), frame.getX(a4), frame.getY(a4), frame.getZ(a4));
+        }
+        return result;
+    }
+
+    /*
+     * Residues of the topology with coordinates from the frame, for code which
+     * works on PdbResidue (e.g. base pair classification). Residue types,
+     * atom names and the residue index are reused, only atoms are created.
+     */
+    public ResidueCollection getResidues(Frame frame) {
+        checkFrame(frame);
+        List<PdbResidue> templates = getResidues();
+        List<PdbResidue> residues = new ArrayList<PdbResidue>(templates.size());
+
+        for (int i = 0; i < templates.size(); i++) {
+            PdbResidue template = templates.get(i);
+            if (residueAtomStarts[i] == -1) {
+                residues.add(template);
+                continue;
+            }
+
+            List<PdbAtomLine> templateAtoms = template.getAtoms();
+            List<PdbAtomLine> residueAtoms = new ArrayList<PdbAtomLine>(templateAtoms.size());
+            for (int j = 0; j < templateAtoms.size(); j++) {
+                int atomIndex = residueAtomStarts[i] + j;
+                residueAtoms.add(templateAtoms.get(j).replaceCoordinates(frame.getX(atomIndex), frame.getY(atomIndex), frame.getZ(atomIndex)));
+            }
+            residues.add(template.replaceAtoms(residueAtoms));
+        }
+
+        return new FrameResidues(model, Collections.unmodifiableList(residues));
+    }
+
+    private void checkFrame(Frame frame) {
+        if (frame.getAtomCount() != atoms.size()) {
+            throw new IllegalArgumentException("Expected a frame with " + atoms.size() + " atoms, got: " + frame.getAtomCount());
+        }
+    }
+
+    /*
+     * Residues are at the same positions as in the model, so its index is
+     * used as it is
+     */
+    private static final class FrameResidues implements ResidueCollection {
+        private final PdbModel model;
+        private final List<PdbResidue> residues;
+
+        private FrameResidues(PdbModel model, List<PdbResidue> residues) {
+            super();
+            this.model = model;
+            this.residues = residues;
+        }
+
+        @Override
+        public List<PdbResidue> getResidues() {
+            return residues;
+        }
+
+        @Override
+        public PdbResidue findResidue(char chainIdentifier, int residueNumber, char insertionCode) {
+            return findResidue(new PdbResidueIdentifier(chainIdentifier, residueNumber, insertionCode));
+        }
+
+        @Override
+        public PdbResidue findResidue(PdbResidueIdentifier query) {
+            int index = model.indexOf(query);
+            if (index == -1) {
+                throw new IllegalArgumentException("Failed to find residue: " + query);
+            }
+            return residues.get(index);
+        }
+
+        @Override
+        public int indexOf(PdbResidueIdentifier query) {
+            return model.indexOf(query);
+        }
+    }
+}
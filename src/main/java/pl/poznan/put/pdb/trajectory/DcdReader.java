@@ -0,0 +1,134 @@
+package pl.poznan.put.pdb.trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import pl.poznan.put.pdb.analysis.PackedFrame;
+
+/*
+ * CHARMM/NAMD DCD trajectories in either byte order. The file is a sequence
+ * of Fortran records (each with its length before and after), so all frames
+ * have the same size and are found by offset. Files with fixed atoms are not
+ * supported.
+ */
+class DcdReader extends TrajectoryReader {
+    private static final int HEADER_RECORD_SIZE = 84;
+    private static final int UNIT_CELL_RECORD_SIZE = 48;
+
+    private final ByteOrder byteOrder;
+    private final int atomCount;
+    private final int frameCount;
+    private final boolean hasUnitCell;
+    private final boolean hasFourDimensions;
+    private final long firstFrameOffset;
+    private final long frameSize;
+    private final ByteBuffer buffer;
+
+    DcdReader(File path) throws IOException {
+        super(path);
+
+        try {
+            ByteBuffer header = ByteBuffer.allocate(DcdReader.HEADER_RECORD_SIZE + 8);
+            readFully(header, 0);
+
+            if (header.order(ByteOrder.LITTLE_ENDIAN).getInt(0) == DcdReader.HEADER_RECORD_SIZE) {
+                byteOrder = ByteOrder.LITTLE_ENDIAN;
+            } else if (header.order(ByteOrder.BIG_ENDIAN).getInt(0) == DcdReader.HEADER_RECORD_SIZE) {
+                byteOrder = ByteOrder.BIG_ENDIAN;
+            } else {
+                throw new IOException("Not a DCD file: " + path);
+            }
+            header.order(byteOrder);
+
+            if (header.get(4) != 'C' || header.get(5) != 'O' || header.get(6) != 'R' || header.get(7) != 'D') {
+                throw new IOException("Not a DCD coordinate file: " + path);
+            }
+
+            // control array of 20 integers starts at offset 8
+            int fixedAtomCount = header.getInt(8 + 8 * 4);
+            boolean isCharmm = header.getInt(8 + 19 * 4) != 0;
+            hasUnitCell = isCharmm && header.getInt(8 + 10 * 4) != 0;
+            hasFourDimensions = isCharmm && header.getInt(8 + 11 * 4) == 1;
+
+            if (fixedAtomCount != 0) {
+                throw new IOException("DCD files with fixed atoms are not supported: " + path);
+            }
+
+            // title record: variable length
+            long offset = DcdReader.HEADER_RECORD_SIZE + 8;
+            int titleSize = readRecordMarker(offset);
+            offset += titleSize + 8;
+
+            // atom count record
+            ByteBuffer atoms = ByteBuffer.allocate(12).order(byteOrder);
+            readFully(atoms, offset);
+            if (atoms.getInt(0) != 4) {
+                throw new IOException("Invalid DCD atom count record: " + path);
+            }
+            atomCount = atoms.getInt(4);
+            offset += 12;
+
+            firstFrameOffset = offset;
+            long coordinateRecordSize = 4L * atomCount + 8;
+            frameSize = (hasUnitCell ? DcdReader.UNIT_CELL_RECORD_SIZE + 8 : 0) + coordinateRecordSize * (hasFourDimensions ? 4 : 3);
+            // the header count is not updated by some programs while writing
+            frameCount = (int) ((getFileSize() - firstFrameOffset) / frameSize);
+            buffer = ByteBuffer.allocate((int) frameSize).order(byteOrder);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getAtomCount() {
+        return atomCount;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public synchronized void readFrame(int frameIndex, PackedFrame frame) throws IOException {
+        if (frameIndex < 0 || frameIndex >= frameCount) {
+            throw new IndexOutOfBoundsException("Invalid frame index: " + frameIndex);
+        }
+        if (frame.getAtomCount() != atomCount) {
+            throw new IllegalArgumentException("Expected a frame with " + atomCount + " atoms, got: " + frame.getAtomCount());
+        }
+
+        buffer.clear();
+        readFully(buffer, firstFrameOffset + frameIndex * frameSize);
+
+        int position = hasUnitCell ? DcdReader.UNIT_CELL_RECORD_SIZE + 8 : 0;
+        double[] coordinates = frame.getCoordinates();
+        int recordSize = 4 * atomCount;
+
+        for (int dimension = 0; dimension < 3; dimension++) {
+            if (buffer.getInt(position) != recordSize || buffer.getInt(position + 4 + recordSize) != recordSize) {
+                throw new IOException("Invalid DCD coordinate record in frame " + frameIndex);
+            }
+            position += 4;
+
+            for (int i = 0; i < atomCount; i++) {
+                coordinates[i * 3 + dimension] = buffer.getFloat(position);
+                position += 4;
+            }
+            position += 4;
+        }
+    }
+
+    private int readRecordMarker(long offset) throws IOException {
+        ByteBuffer marker = ByteBuffer.allocate(4).order(byteOrder);
+        readFully(marker, offset);
+        int size = marker.getInt(0);
+        if (size < 0) {
+            throw new IOException("Invalid DCD record size: " + size);
+        }
+        return size;
+    }
+}
@@ -0,0 +1,170 @@
+package pl.poznan.put.pdb.trajectory;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import pl.poznan.put.pdb.analysis.PackedFrame;
+import pl.poznan.put.pdb.analysis.Topology;
+import pl.poznan.put.torsion.AtomBasedTorsionAngleType;
+
+/*
+ * Reader of binary trajectory files. Frames are read as coordinates in
+ * Angstroms, in the order of atoms in the file, which must be the order of
+ * Topology.getAtoms() (i.e. the PDB file the topology comes from has to list
+ * all atoms of the trajectory, in the same order and with no ParseOptions
+ * filters). Any frame can be read directly and sequential reading can skip
+ * frames with a stride.
+ */
+public abstract class TrajectoryReader implements Closeable {
+    /**
+     * Open a DCD or XTC file (recognized by extension) and check if it
+     * matches the topology.
+     *
+     * @param file
+     *            Path to the trajectory.
+     * @param topology
+     *            Topology with the same atoms as the trajectory.
+     * @return A reader positioned at the first frame.
+     * @throws IOException
+     *             If the file is invalid or has a different number of atoms.
+     */
+    public static TrajectoryReader open(File file, Topology topology) throws IOException {
+        String name = file.getName().toLowerCase();
+        TrajectoryReader reader;
+
+        if (name.endsWith(".dcd")) {
+            reader = new DcdReader(file);
+        } else if (name.endsWith(".xtc")) {
+            reader = new XtcReader(file);
+        } else {
+            throw new IOException("Unknown trajectory format: " + file);
+        }
+
+        if (reader.getAtomCount() != topology.getAtomCount()) {
+            reader.close();
+            throw new IOException("Trajectory has " + reader.getAtomCount() + " atoms, topology has: " + topology.getAtomCount());
+        }
+        return reader;
+    }
+
+    private final RandomAccessFile file;
+    protected final FileChannel channel;
+
+    private int position = 0;
+    private int stride = 1;
+
+    protected TrajectoryReader(File path) throws IOException {
+        super();
+        this.file = new RandomAccessFile(path, "r");
+        this.channel = file.getChannel();
+    }
+
+    public abstract int getAtomCount();
+
+    public abstract int getFrameCount();
+
+    /*
+     * Fill the frame with coordinates of frame at given index
+     */
+    public abstract void readFrame(int frameIndex, PackedFrame frame) throws IOException;
+
+    public PackedFrame readFrame(int frameIndex) throws IOException {
+        PackedFrame frame = new PackedFrame(getAtomCount());
+        readFrame(frameIndex, frame);
+        return frame;
+    }
+
+    public int getStride() {
+        return stride;
+    }
+
+    /*
+     * Sequential reading returns every stride-th frame
+     */
+    public void setStride(int stride) {
+        if (stride < 1) {
+            throw new IllegalArgumentException("Stride must be positive, got: " + stride);
+        }
+        this.stride = stride;
+    }
+
+    /*
+     * Index of the frame to be returned by nextFrame()
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    public void seek(int frameIndex) {
+        if (frameIndex < 0 || frameIndex > getFrameCount()) {
+            throw new IndexOutOfBoundsException("Invalid frame index: " + frameIndex);
+        }
+        position = frameIndex;
+    }
+
+    public boolean hasNextFrame() {
+        return position < getFrameCount();
+    }
+
+    /*
+     * Read the next frame into the given one (to avoid allocating a new
+     * frame each time). Returns false if there are no more frames.
+     */
+    public boolean nextFrame(PackedFrame frame) throws IOException {
+        if (!hasNextFrame()) {
+            return false;
+        }
+        readFrame(position, frame);
+        position = Math.min(position + stride, getFrameCount());
+        return true;
+    }
+
+    /*
+     * The next frame or null if there are no more frames
+     */
+    public PackedFrame nextFrame() throws IOException {
+        PackedFrame frame = new PackedFrame(getAtomCount());
+        return nextFrame(frame) ? frame : null;
+    }
+
+    /*
+     * Values of the torsion angle (in radians) for all residues in all
+     * remaining frames, one row per frame
+     */
+    public double[][] calculateTorsionAngles(Topology topology, AtomBasedTorsionAngleType angleType) throws IOException {
+        int count = (getFrameCount() - position + stride - 1) / stride;
+        double[][] result = new double[count][];
+        PackedFrame frame = new PackedFrame(getAtomCount());
+
+        for (int i = 0; i < count && nextFrame(frame); i++) {
+            result[i] = topology.calculateTorsionAngles(frame, angleType);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    protected long getFileSize() throws IOException {
+        return channel.size();
+    }
+
+    protected void readFully(ByteBuffer buffer, long offset) throws IOException {
+        long current = offset;
+        while (buffer.hasRemaining()) {
+            int count = channel.read(buffer, current);
+            if (count < 0) {
+                throw new EOFException("Unexpected end of trajectory file");
+            }
+            current += count;
+        }
+        buffer.flip();
+    }
+}
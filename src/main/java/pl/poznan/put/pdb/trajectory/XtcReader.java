@@ -0,0 +1,364 @@
+package pl.poznan.put.pdb.trajectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import pl.poznan.put.pdb.analysis.PackedFrame;
+
+/*
+ * GROMACS XTC trajectories: big-endian XDR with coordinates compressed to
+ * integers of given precision. Frames have different sizes, so their offsets
+ * are collected from frame headers (without decompression) when the file is
+ * opened. Decompression follows xdr3dfcoord() from the xdrfile library.
+ * Coordinates are converted from nm to Angstroms.
+ */
+class XtcReader extends TrajectoryReader {
+    private static final int MAGIC = 1995;
+    // magic, atom count, step, time, 3x3 box, atom count again
+    private static final int HEADER_SIZE = 4 * 14;
+    // precision, 3 x minimum, 3 x maximum, smallidx, byte count
+    private static final int COMPRESSION_HEADER_SIZE = 4 * 9;
+    private static final int MAX_UNCOMPRESSED_ATOMS = 9;
+    private static final double NM_TO_ANGSTROM = 10.0;
+
+    private static final int FIRST_INDEX = 9;
+    private static final int[] MAGIC_INTS = { 0, 0, 0, 0, 0, 0, 0, 0, 0, 8, 10, 12, 16, 20, 25, 32, 40, 50, 64, 80, 101, 128, 161, 203, 256, 322, 406, 512, 645, 812, 1024, 1290, 1625, 2048, 2580, 3250, 4096, 5060, 6501, 8192, 10321, 13003, 16384, 20642, 26007, 32768, 41285, 52015, 65536, 82570, 104031, 131072, 165140, 208063, 262144, 330280, 416127, 524287, 660561, 832255, 1048576, 1321122, 1664510, 2097152, 2642245, 3329021, 4194304, 5284491, 6658042, 8388607, 10568983, 13316085, 16777216 };
+
+    private final int atomCount;
+    private long[] frameOffsets = new long[16];
+    private int frameCount = 0;
+
+    XtcReader(File path) throws IOException {
+        super(path);
+
+        try {
+            long fileSize = getFileSize();
+            long offset = 0;
+            int firstAtomCount = -1;
+            ByteBuffer header = ByteBuffer.allocate(XtcReader.HEADER_SIZE + XtcReader.COMPRESSION_HEADER_SIZE);
+
+            while (offset < fileSize) {
+                header.clear();
+                header.limit((int) Math.min(header.capacity(), fileSize - offset));
+                readFully(header, offset);
+
+                // a partially written last frame is ignored
+                if (header.limit() < XtcReader.HEADER_SIZE) {
+                    break;
+                }
+                if (header.getInt(0) != XtcReader.MAGIC) {
+                    throw new IOException("Invalid XTC frame header at offset " + offset + ": " + path);
+                }
+                int frameAtomCount = header.getInt(4);
+                if (firstAtomCount == -1) {
+                    firstAtomCount = frameAtomCount;
+                } else if (frameAtomCount != firstAtomCount) {
+                    throw new IOException("XTC frames have different numbers of atoms: " + path);
+                }
+
+                long size = XtcReader.HEADER_SIZE;
+                if (frameAtomCount <= XtcReader.MAX_UNCOMPRESSED_ATOMS) {
+                    size += 12L * frameAtomCount;
+                } else {
+                    if (header.limit() < header.capacity()) {
+                        break;
+                    }
+                    int byteCount = header.getInt(XtcReader.HEADER_SIZE + XtcReader.COMPRESSION_HEADER_SIZE - 4);
+                    size += XtcReader.COMPRESSION_HEADER_SIZE + XtcReader.padToFour(byteCount);
+                }
+
+                if (offset + size > fileSize) {
+                    break;
+                }
+                addFrameOffset(offset);
+                offset += size;
+            }
+
+            atomCount = Math.max(firstAtomCount, 0);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int getAtomCount() {
+        return atomCount;
+    }
+
+    @Override
+    public int getFrameCount() {
+        return frameCount;
+    }
+
+    @Override
+    public synchronized void readFrame(int frameIndex, PackedFrame frame) throws IOException {
+        if (frameIndex < 0 || frameIndex >= frameCount) {
+            throw new IndexOutOfBoundsException("Invalid frame index: " + frameIndex);
+        }
+        if (frame.getAtomCount() != atomCount) {
+            throw new IllegalArgumentException("Expected a frame with " + atomCount + " atoms, got: " + frame.getAtomCount());
+        }
+
+        long offset = frameOffsets[frameIndex];
+        long end = frameIndex + 1 < frameCount ? frameOffsets[frameIndex + 1] : getFileSize();
+        ByteBuffer buffer = ByteBuffer.allocate((int) (end - offset));
+        readFully(buffer, offset);
+
+        buffer.position(XtcReader.HEADER_SIZE);
+        double[] coordinates = frame.getCoordinates();
+
+        if (atomCount <= XtcReader.MAX_UNCOMPRESSED_ATOMS) {
+            for (int i = 0; i < atomCount * 3; i++) {
+                coordinates[i] = buffer.getFloat() * XtcReader.NM_TO_ANGSTROM;
+            }
+        } else {
+            XtcReader.decompress(buffer, atomCount, coordinates);
+        }
+    }
+
+    private void addFrameOffset(long offset) {
+        if (frameCount == frameOffsets.length) {
+            frameOffsets = Arrays.copyOf(frameOffsets, frameCount * 2);
+        }
+        frameOffsets[frameCount++] = offset;
+    }
+
+    private static void decompress(ByteBuffer buffer, int atomCount, double[] coordinates) throws IOException {
+        float precision = buffer.getFloat();
+        int[] minInt = { buffer.getInt(), buffer.getInt(), buffer.getInt() };
+        int[] maxInt = { buffer.getInt(), buffer.getInt(), buffer.getInt() };
+        int smallIndex = buffer.getInt();
+        int byteCount = buffer.getInt();
+
+        if (smallIndex < XtcReader.FIRST_INDEX || smallIndex >= XtcReader.MAGIC_INTS.length || byteCount < 0 || byteCount > buffer.remaining()) {
+            throw new IOException("Invalid XTC compression header");
+        }
+
+        int[] sizeInt = new int[3];
+        int[] bitSizeInt = new int[3];
+        int bitSize = 0;
+        for (int i = 0; i < 3; i++) {
+            sizeInt[i] = maxInt[i] - minInt[i] + 1;
+        }
+        if ((sizeInt[0] | sizeInt[1] | sizeInt[2]) > 0xffffff) {
+            for (int i = 0; i < 3; i++) {
+                bitSizeInt[i] = XtcReader.sizeOfInt(sizeInt[i]);
+            }
+        } else {
+            bitSize = XtcReader.sizeOfInts(sizeInt);
+        }
+
+        int smaller = XtcReader.MAGIC_INTS[Math.max(XtcReader.FIRST_INDEX, smallIndex - 1)] / 2;
+        int smallNumber = XtcReader.MAGIC_INTS[smallIndex] / 2;
+        int[] sizeSmall = new int[3];
+        Arrays.fill(sizeSmall, XtcReader.MAGIC_INTS[smallIndex]);
+
+        BitReader bits = new BitReader(buffer, byteCount);
+        double scale = XtcReader.NM_TO_ANGSTROM / precision;
+        int[] thisCoordinate = new int[3];
+        int[] previousCoordinate = new int[3];
+        int run = 0;
+        int atom = 0;
+        int output = 0;
+
+        while (atom < atomCount) {
+            if (bitSize == 0) {
+                for (int i = 0; i < 3; i++) {
+                    thisCoordinate[i] = bits.readBits(bitSizeInt[i]);
+                }
+            } else {
+                bits.readInts(bitSize, sizeInt, thisCoordinate);
+            }
+            atom += 1;
+
+            for (int i = 0; i < 3; i++) {
+                thisCoordinate[i] += minInt[i];
+                previousCoordinate[i] = thisCoordinate[i];
+            }
+
+            int isSmaller = 0;
+            if (bits.readBits(1) == 1) {
+                run = bits.readBits(5);
+                isSmaller = run % 3;
+                run -= isSmaller;
+                isSmaller -= 1;
+            }
+
+            if (run > 0) {
+                if (atom + run / 3 > atomCount) {
+                    throw new IOException("Invalid XTC compressed data");
+                }
+
+                for (int k = 0; k < run; k += 3) {
+                    bits.readInts(smallIndex, sizeSmall, thisCoordinate);
+                    atom += 1;
+
+                    for (int i = 0; i < 3; i++) {
+                        thisCoordinate[i] += previousCoordinate[i] - smallNumber;
+                    }
+
+                    if (k == 0) {
+                        // the first two atoms are stored swapped (it compresses water better)
+                        int[] swap = thisCoordinate;
+                        thisCoordinate = previousCoordinate;
+                        previousCoordinate = swap;
+                        output = XtcReader.store(coordinates, output, previousCoordinate, scale);
+                    } else {
+                        System.arraycopy(thisCoordinate, 0, previousCoordinate, 0, 3);
+                    }
+                    output = XtcReader.store(coordinates, output, thisCoordinate, scale);
+                }
+            } else {
+                output = XtcReader.store(coordinates, output, thisCoordinate, scale);
+            }
+
+            smallIndex += isSmaller;
+            if (smallIndex < XtcReader.FIRST_INDEX || smallIndex >= XtcReader.MAGIC_INTS.length) {
+                throw new IOException("Invalid XTC compressed data");
+            }
+            if (isSmaller < 0) {
+                smallNumber = smaller;
+                smaller = smallIndex > XtcReader.FIRST_INDEX ? XtcReader.MAGIC_INTS[smallIndex - 1] / 2 : 0;
+            } else if (isSmaller > 0) {
+                smaller = smallNumber;
+                smallNumber = XtcReader.MAGIC_INTS[smallIndex] / 2;
+            }
+            Arrays.fill(sizeSmall, XtcReader.MAGIC_INTS[smallIndex]);
+        }
+    }
+
+    private static int store(double[] coordinates, int output, int[] coordinate, double scale) {
+        coordinates[output] = coordinate[0] * scale;
+        coordinates[output + 1] = coordinate[1] * scale;
+        coordinates[output + 2] = coordinate[2] * scale;
+        return output + 3;
+    }
+
+    /*
+     * Number of bits needed to store values from 0 to size
+     */
+    private static int sizeOfInt(int size) {
+        long number = 1;
+        int bits = 0;
+        while (size >= number && bits < 32) {
+            bits += 1;
+            number <<= 1;
+        }
+        return bits;
+    }
+
+    /*
+     * Number of bits needed to store three values together, each smaller than
+     * the corresponding size
+     */
+    private static int sizeOfInts(int[] sizes) {
+        int[] bytes = new int[32];
+        int byteCount = 1;
+        bytes[0] = 1;
+
+        for (int size : sizes) {
+            long tmp = 0;
+            int i = 0;
+            for (; i < byteCount; i++) {
+                tmp = bytes[i] * (long) size + tmp;
+                bytes[i] = (int) (tmp & 0xff);
+                tmp >>>= 8;
+            }
+            while (tmp != 0) {
+                bytes[i++] = (int) (tmp & 0xff);
+                tmp >>>= 8;
+            }
+            byteCount = i;
+        }
+
+        int number = 1;
+        int bits = 0;
+        byteCount -= 1;
+        while (bytes[byteCount] >= number) {
+            bits += 1;
+            number *= 2;
+        }
+        return bits + byteCount * 8;
+    }
+
+    private static int padToFour(int count) {
+        return (count + 3) & ~3;
+    }
+
+    private static final class BitReader {
+        private final ByteBuffer buffer;
+        private final int end;
+        private final int[] bytes = new int[32];
+        private int position;
+        private int lastBits = 0;
+        private int lastByte = 0;
+
+        private BitReader(ByteBuffer buffer, int byteCount) {
+            super();
+            this.buffer = buffer;
+            this.position = buffer.position();
+            this.end = position + byteCount;
+        }
+
+        private int readBits(int bitCount) throws IOException {
+            int mask = bitCount == 32 ? -1 : (1 << bitCount) - 1;
+            int remaining = bitCount;
+            int number = 0;
+
+            while (remaining >= 8) {
+                lastByte = lastByte << 8 | nextByte();
+                number |= (lastByte >>> lastBits) << (remaining - 8);
+                remaining -= 8;
+            }
+            if (remaining > 0) {
+                if (lastBits < remaining) {
+                    lastBits += 8;
+                    lastByte = lastByte << 8 | nextByte();
+                }
+                lastBits -= remaining;
+                number |= (lastByte >>> lastBits) & ((1 << remaining) - 1);
+            }
+            return number & mask;
+        }
+
+        /*
+         * Three integers stored together in bitCount bits as a mixed-radix
+         * number with given sizes
+         */
+        private void readInts(int bitCount, int[] sizes, int[] numbers) throws IOException {
+            Arrays.fill(bytes, 0, 4, 0);
+            int byteCount = 0;
+            int remaining = bitCount;
+
+            while (remaining > 8) {
+                bytes[byteCount++] = readBits(8);
+                remaining -= 8;
+            }
+            if (remaining > 0) {
+                bytes[byteCount++] = readBits(remaining);
+            }
+
+            for (int i = 2; i > 0; i--) {
+                long number = 0;
+                for (int j = byteCount - 1; j >= 0; j--) {
+                    number = number << 8 | bytes[j];
+                    long quotient = number / sizes[i];
+                    bytes[j] = (int) quotient;
+                    number -= quotient * sizes[i];
+                }
+                numbers[i] = (int) number;
+            }
+            numbers[0] = bytes[0] | bytes[1] << 8 | bytes[2] << 16 | bytes[3] << 24;
+        }
+
+        private int nextByte() throws IOException {
+            if (position >= end) {
+                throw new IOException("Invalid XTC compressed data");
+            }
+            return buffer.get(position++) & 0xff;
+        }
+    }
+}
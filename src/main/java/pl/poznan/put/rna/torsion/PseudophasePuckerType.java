@@ -3,6 +3,7 @@ package pl.poznan.put.rna.torsion;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 import pl.poznan.put.circular.Angle;
 import pl.poznan.put.circular.exception.InvalidCircularValueException;
@@ -14,6 +15,7 @@ import pl.poznan.put.torsion.TorsionAngleValue;
 
 public class PseudophasePuckerType extends TorsionAngleType implements MasterTorsionAngleType {
     private static final PseudophasePuckerType INSTANCE = new PseudophasePuckerType();
+    private static final double SCALE = 2 * (Math.sin(Math.toRadians(36.0)) + Math.sin(Math.toRadians(72.0)));
 
     public static PseudophasePuckerType getInstance() {
         return PseudophasePuckerType.INSTANCE;
@@ -46,14 +48,30 @@ public class PseudophasePuckerType extends TorsionAngleType implements MasterTor
         TorsionAngleValue nu2 = Nu2.getInstance().calculate(residues, currentIndex);
         TorsionAngleValue nu3 = Nu3.getInstance().calculate(residues, currentIndex);
         TorsionAngleValue nu4 = Nu4.getInstance().calculate(residues, currentIndex);
+        return calculate(nu0, nu1, nu2, nu3, nu4);
+    }
+
+    @Override
+    public TorsionAngleValue calculate(List<PdbResidue> residues,
+            int currentIndex,
+            Map<TorsionAngleType, TorsionAngleValue> knownValues) throws InvalidCircularValueException {
+        TorsionAngleValue nu0 = TorsionAngleType.knownOrCalculate(Nu0.getInstance(), residues, currentIndex, knownValues);
+        TorsionAngleValue nu1 = TorsionAngleType.knownOrCalculate(Nu1.getInstance(), residues, currentIndex, knownValues);
+        TorsionAngleValue nu2 = TorsionAngleType.knownOrCalculate(Nu2.getInstance(), residues, currentIndex, knownValues);
+        TorsionAngleValue nu3 = TorsionAngleType.knownOrCalculate(Nu3.getInstance(), residues, currentIndex, knownValues);
+        TorsionAngleValue nu4 = TorsionAngleType.knownOrCalculate(Nu4.getInstance(), residues, currentIndex, knownValues);
+        return calculate(nu0, nu1, nu2, nu3, nu4);
+    }
 
+    private TorsionAngleValue calculate(TorsionAngleValue nu0,
+            TorsionAngleValue nu1, TorsionAngleValue nu2, TorsionAngleValue nu3,
+            TorsionAngleValue nu4) {
         if (!nu0.isValid() || !nu1.isValid() || !nu2.isValid() || !nu3.isValid() || !nu4.isValid()) {
             return TorsionAngleValue.invalidInstance(this);
         }
 
-        double scale = 2 * (Math.sin(Math.toRadians(36.0)) + Math.sin(Math.toRadians(72.0)));
         double y = nu1.getValue().getRadians() + nu4.getValue().getRadians() - nu0.getValue().getRadians() - nu3.getValue().getRadians();
-        double x = nu2.getValue().getRadians() * scale;
+        double x = nu2.getValue().getRadians() * PseudophasePuckerType.SCALE;
         return new TorsionAngleValue(this, new Angle(Math.atan2(y, x)));
     }
 
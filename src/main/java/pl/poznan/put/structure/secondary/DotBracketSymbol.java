@@ -1,32 +1,46 @@
 package pl.poznan.put.structure.secondary;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.List;
 
 public class DotBracketSymbol implements Comparable<DotBracketSymbol>, Serializable {
-    private static final List<Character> OPENING = new ArrayList<Character>();
-    private static final List<Character> CLOSING = new ArrayList<Character>();
+    public static final String OPENING = "([{<ABCDEFGHIJKLMNOPQRSTUVWXYZ";
+    public static final String CLOSING = ")]}>abcdefghijklmnopqrstuvwxyz";
+
+    /*
+     * For every ASCII character: (order + 1) for opening brackets, -(order + 1)
+     * for closing brackets and 0 for anything else
+     */
+    private static final byte[] BRACKETS = new byte[128];
 
     static {
-        for (char c : "([{<ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray()) {
-            DotBracketSymbol.OPENING.add(c);
-        }
-        for (char c : ")]}>abcdefghijklmnopqrstuvwxyz".toCharArray()) {
-            DotBracketSymbol.CLOSING.add(c);
+        for (int i = 0; i < DotBracketSymbol.OPENING.length(); i++) {
+            DotBracketSymbol.BRACKETS[DotBracketSymbol.OPENING.charAt(i)] = (byte) (i + 1);
+            DotBracketSymbol.BRACKETS[DotBracketSymbol.CLOSING.charAt(i)] = (byte) -(i + 1);
         }
     }
 
+    private static int bracket(char c) {
+        return c < 128 ? DotBracketSymbol.BRACKETS[c] : 0;
+    }
+
     public static boolean isOpening(char c) {
-        return DotBracketSymbol.OPENING.contains(c);
+        return DotBracketSymbol.bracket(c) > 0;
     }
 
     public static boolean isClosing(char c) {
-        return DotBracketSymbol.CLOSING.contains(c);
+        return DotBracketSymbol.bracket(c) < 0;
     }
 
     public static boolean isPairing(char c) {
-        return DotBracketSymbol.isOpening(c) || DotBracketSymbol.isClosing(c);
+        return DotBracketSymbol.bracket(c) != 0;
+    }
+
+    /*
+     * 0 for '(' and ')', 1 for '[' and ']' and so on. Also 0 for non-brackets.
+     */
+    public static int getOrder(char c) {
+        int bracket = DotBracketSymbol.bracket(c);
+        return bracket > 0 ? bracket - 1 : bracket < 0 ? -bracket - 1 : 0;
     }
 
     private final char sequence;
@@ -114,12 +128,7 @@ public class DotBracketSymbol implements Comparable<DotBracketSymbol>, Serializa
     }
 
     public int getOrder() {
-        if (isOpening()) {
-            return DotBracketSymbol.OPENING.indexOf(structure);
-        } else if (isClosing()) {
-            return DotBracketSymbol.CLOSING.indexOf(structure);
-        }
-        return 0;
+        return DotBracketSymbol.getOrder(structure);
     }
 
     @Override
@@ -1,7 +1,11 @@
 package pl.poznan.put.structure.secondary.formats;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -12,7 +16,6 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
-import org.apache.commons.collections4.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,7 +25,6 @@ import pl.poznan.put.pdb.analysis.PdbResidue;
 import pl.poznan.put.pdb.analysis.ResidueCollection;
 import pl.poznan.put.structure.secondary.BasePair;
 import pl.poznan.put.structure.secondary.ClassifiedBasePair;
-import pl.poznan.put.structure.secondary.DotBracketSymbol;
 
 public class BpSeq implements Serializable {
     public static class Entry implements Comparable<Entry>, Serializable {
@@ -127,66 +129,69 @@ public class BpSeq implements Serializable {
     private static boolean printComments = false;
 
     public static BpSeq fromString(String data) throws InvalidSecondaryStructureException {
-        List<BpSeq.Entry> entries = new ArrayList<BpSeq.Entry>();
-
-        for (String line : data.split("\n")) {
-            line = line.trim();
-
-            int hash = line.indexOf('#');
-            if (hash != -1) {
-                line = line.substring(0, hash);
-            }
+        try {
+            return BpSeq.fromReader(new StringReader(data));
+        } catch (IOException e) {
+            throw new InvalidSecondaryStructureException("Failed to read BPSEQ data", e);
+        }
+    }
 
-            if (line.length() == 0) {
-                continue;
+    public static BpSeq fromReader(Reader reader) throws IOException, InvalidSecondaryStructureException {
+        FieldTokenizer tokenizer = new FieldTokenizer(reader);
+        int[] indices = new int[256];
+        int[] pairs = new int[256];
+        char[] sequence = new char[256];
+        int size = 0;
+        boolean isOrdered = true;
+
+        while (tokenizer.nextLine()) {
+            if (tokenizer.getFieldCount() != 3 || tokenizer.getFieldLength(1) != 1) {
+                throw new InvalidSecondaryStructureException("Line does not conform to BPSEQ format: " + tokenizer.getLine());
             }
 
-            String[] split = line.split("\\s+");
-
-            if (split.length != 3 || split[1].length() != 1) {
-                throw new InvalidSecondaryStructureException("Line does not conform to BPSEQ format: " + line);
+            if (size == pairs.length) {
+                indices = Arrays.copyOf(indices, size * 2);
+                pairs = Arrays.copyOf(pairs, size * 2);
+                sequence = Arrays.copyOf(sequence, size * 2);
             }
 
-            int index, pair;
-            char seq;
-
             try {
-                index = Integer.valueOf(split[0]);
-                seq = split[1].charAt(0);
-                pair = Integer.valueOf(split[2]);
+                indices[size] = tokenizer.parseInt(0);
+                sequence[size] = tokenizer.getFieldChar(1, 0);
+                pairs[size] = tokenizer.parseInt(2);
             } catch (NumberFormatException e) {
-                throw new InvalidSecondaryStructureException("Line does not conform to BPSEQ format: " + line, e);
+                throw new InvalidSecondaryStructureException("Line does not conform to BPSEQ format: " + tokenizer.getLine(), e);
             }
 
-            entries.add(new Entry(index, pair, seq));
+            isOrdered &= indices[size] == size + 1;
+            size += 1;
+        }
+
+        if (isOrdered) {
+            return new BpSeq(Arrays.copyOf(sequence, size), Arrays.copyOf(pairs, size), BpSeq.emptyComments(size));
         }
 
+        List<BpSeq.Entry> entries = new ArrayList<BpSeq.Entry>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(indices[i], pairs[i], sequence[i]));
+        }
         return new BpSeq(entries);
     }
 
     public static BpSeq fromCt(Ct ct) throws InvalidSecondaryStructureException {
-        List<BpSeq.Entry> bpseqEntries = new ArrayList<BpSeq.Entry>();
-
-        for (Ct.Entry e : ct.getEntries()) {
-            bpseqEntries.add(new BpSeq.Entry(e.getIndex(), e.getPair(), e.getSeq()));
-        }
-
-        return new BpSeq(bpseqEntries);
+        return new BpSeq(ct.sequence.clone(), ct.pairs.clone(), BpSeq.emptyComments(ct.size()));
     }
 
     public static BpSeq fromDotBracket(DotBracket db) throws InvalidSecondaryStructureException {
-        List<BpSeq.Entry> entries = new ArrayList<BpSeq.Entry>();
+        int size = db.getLength();
+        char[] sequence = db.sequence.toCharArray();
+        int[] pairs = new int[size];
 
-        for (DotBracketSymbol symbol : db.getSymbols()) {
-            DotBracketSymbol pair = symbol.getPair();
-            int index = symbol.getIndex() + 1;
-            int pairIndex = pair != null ? pair.getIndex() + 1 : 0;
-            char sequence = symbol.getSequence();
-
-            entries.add(new Entry(index, pairIndex, sequence));
+        for (int i = 0; i < size; i++) {
+            pairs[i] = db.pairs[i] + 1;
         }
 
-        return new BpSeq(entries);
+        return new BpSeq(sequence, pairs, BpSeq.emptyComments(size));
     }
 
     public static BpSeq fromResidueCollection(ResidueCollection residueCollection, List<ClassifiedBasePair> basePairs) throws InvalidSecondaryStructureException {
@@ -230,13 +235,12 @@ public class BpSeq implements Serializable {
 
     private static List<BpSeq.Entry> generateEntriesForPaired(ResidueCollection residueCollection, Collection<BasePair> basePairs, Map<BasePair, String> basePairToComment) {
         List<BpSeq.Entry> entries = new ArrayList<BpSeq.Entry>();
-        List<PdbResidue> residues = residueCollection.getResidues();
 
         for (BasePair basePair : basePairs) {
             PdbResidue left = residueCollection.findResidue(basePair.getLeft());
             PdbResidue right = residueCollection.findResidue(basePair.getRight());
-            int indexL = 1 + residues.indexOf(left);
-            int indexR = 1 + residues.indexOf(right);
+            int indexL = 1 + residueCollection.indexOf(basePair.getLeft());
+            int indexR = 1 + residueCollection.indexOf(basePair.getRight());
             entries.add(new Entry(indexL, indexR, left.getOneLetterName(), basePairToComment.get(basePair)));
             entries.add(new Entry(indexR, indexL, right.getOneLetterName(), basePairToComment.get(basePair)));
             BpSeq.LOGGER.trace("Storing pair (" + indexL + " -> " + indexR + ") which is (" + left + " -> " + right + ")");
@@ -249,64 +253,163 @@ public class BpSeq implements Serializable {
         BpSeq.printComments = printComments;
     }
 
-    private final SortedSet<Entry> entries;
+    /*
+     * Entry i (0-based) describes residue i + 1. Pairs are stored 1-based as in
+     * the BPSEQ format, with 0 meaning an unpaired residue.
+     */
+    final char[] sequence;
+    final int[] pairs;
+    final String[] comments;
+
+    private transient SortedSet<Entry> entries;
 
     public BpSeq(Collection<BpSeq.Entry> entries) throws InvalidSecondaryStructureException {
-        this.entries = new TreeSet<Entry>(entries);
+        Entry[] sorted = BpSeq.sortAndCheckNumbering(entries);
+        int size = sorted.length;
+
+        sequence = new char[size];
+        pairs = new int[size];
+        comments = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            Entry entry = sorted[i];
+            sequence[i] = entry.seq;
+            pairs[i] = entry.pair;
+            comments[i] = entry.comment;
+        }
+
         validate();
     }
 
+    public BpSeq(char[] sequence, int[] pairs) throws InvalidSecondaryStructureException {
+        this(sequence.clone(), pairs.clone(), BpSeq.emptyComments(sequence.length));
+    }
+
+    BpSeq(char[] sequence, int[] pairs, String[] comments) throws InvalidSecondaryStructureException {
+        super();
+        this.sequence = sequence;
+        this.pairs = pairs;
+        this.comments = comments;
+
+        if (sequence.length != pairs.length || sequence.length != comments.length) {
+            throw new InvalidSecondaryStructureException("Sequence and pairs have different lengths in BPSEQ data");
+        }
+
+        validate();
+    }
+
+    static String[] emptyComments(int size) {
+        String[] comments = new String[size];
+        Arrays.fill(comments, "");
+        return comments;
+    }
+
     /*
-     * Check if all pairs match.
+     * Order entries like a TreeSet would (the first one wins on duplicated
+     * index) and check if they are numbered 1, 2, 3, ...
      */
-    private void validate() throws InvalidSecondaryStructureException {
-        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
-
-        for (Entry e : entries) {
-            if (e.index == e.pair) {
-                throw new InvalidSecondaryStructureException("Invalid line in BPSEQ data, a residue cannot be paired with itself! Line: " + e);
+    private static Entry[] sortAndCheckNumbering(Collection<Entry> entries) throws InvalidSecondaryStructureException {
+        Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(sorted);
+
+        int size = 0;
+        for (Entry entry : sorted) {
+            if (size == 0 || sorted[size - 1].index != entry.index) {
+                sorted[size] = entry;
+                size += 1;
             }
+        }
 
-            map.put(e.index, e.pair);
+        for (int i = 0; i < size; i++) {
+            if (sorted[i].index == sorted[i].pair) {
+                throw new InvalidSecondaryStructureException("Invalid line in BPSEQ data, a residue cannot be paired with itself! Line: " + sorted[i]);
+            }
         }
 
         int previous = 0;
+        for (int i = 0; i < size; i++) {
+            Entry entry = sorted[i];
+            if (entry.index - previous != 1) {
+                throw new InvalidSecondaryStructureException("Inconsistent numbering in BPSEQ format: previous=" + previous + ", current=" + entry.index);
+            }
+            previous = entry.index;
+        }
+
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
+    /*
+     * Check if all pairs match.
+     */
+    private void validate() throws InvalidSecondaryStructureException {
+        int size = pairs.length;
 
-        for (Entry e : entries) {
-            if (e.index - previous != 1) {
-                throw new InvalidSecondaryStructureException("Inconsistent numbering in BPSEQ format: previous=" + previous + ", current=" + e.index);
+        for (int i = 0; i < size; i++) {
+            if (pairs[i] == i + 1) {
+                throw new InvalidSecondaryStructureException("Invalid line in BPSEQ data, a residue cannot be paired with itself! Line: " + getEntry(i));
             }
-            previous = e.index;
+        }
+
+        for (int i = 0; i < size; i++) {
+            int index = i + 1;
+            int pair = pairs[i];
 
-            int pair = map.get(e.index);
             if (pair != 0) {
-                if (!map.containsKey(pair)) {
-                    throw new InvalidSecondaryStructureException("Inconsistency in BPSEQ format: (" + e.index + " -> " + pair + ")");
+                if (pair < 1 || pair > size) {
+                    throw new InvalidSecondaryStructureException("Inconsistency in BPSEQ format: (" + index + " -> " + pair + ")");
                 }
-                if (map.get(pair) != e.index) {
-                    throw new InvalidSecondaryStructureException("Inconsistency in BPSEQ format: (" + e.index + " -> " + pair + ") and (" + pair + " -> " + map.get(pair) + ")");
+                if (pairs[pair - 1] != index) {
+                    throw new InvalidSecondaryStructureException("Inconsistency in BPSEQ format: (" + index + " -> " + pair + ") and (" + pair + " -> " + pairs[pair - 1] + ")");
                 }
             }
         }
     }
 
+    private Entry getEntry(int i) {
+        return new Entry(i + 1, pairs[i], sequence[i], comments[i]);
+    }
+
     public SortedSet<Entry> getEntries() {
-        return Collections.unmodifiableSortedSet(entries);
+        if (entries == null) {
+            SortedSet<Entry> set = new TreeSet<Entry>();
+            for (int i = 0; i < pairs.length; i++) {
+                set.add(getEntry(i));
+            }
+            entries = Collections.unmodifiableSortedSet(set);
+        }
+        return entries;
+    }
+
+    public int size() {
+        return pairs.length;
+    }
+
+    public int getPair(int index) {
+        return pairs[index - 1];
+    }
+
+    public char getSeq(int index) {
+        return sequence[index - 1];
+    }
+
+    public String getComment(int index) {
+        return comments[index - 1];
+    }
+
+    public int[] getPairs() {
+        return pairs.clone();
     }
 
     public String getSequence() {
-        StringBuilder builder = new StringBuilder();
-        for (Entry e : entries) {
-            builder.append(e.seq);
-        }
-        return builder.toString();
+        return new String(sequence);
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + (entries == null ? 0 : entries.hashCode());
+        result = prime * result + Arrays.hashCode(pairs);
+        result = prime * result + Arrays.hashCode(sequence);
         return result;
     }
 
@@ -322,22 +425,24 @@ public class BpSeq implements Serializable {
             return false;
         }
         BpSeq other = (BpSeq) obj;
-        if (entries == null) {
-            if (other.entries != null) {
-                return false;
-            }
-        } else if (!CollectionUtils.isEqualCollection(entries, other.entries)) {
-            return false;
-        }
-        return true;
+        return Arrays.equals(pairs, other.pairs) && Arrays.equals(sequence, other.sequence);
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
 
-        for (Entry e : entries) {
-            builder.append(e.toString());
+        for (int i = 0; i < pairs.length; i++) {
+            if (BpSeq.printComments && !StringUtils.isBlank(comments[i])) {
+                builder.append('#');
+                builder.append(comments[i]);
+                builder.append('\n');
+            }
+            builder.append(i + 1);
+            builder.append(' ');
+            builder.append(sequence[i]);
+            builder.append(' ');
+            builder.append(pairs[i]);
             builder.append('\n');
         }
 
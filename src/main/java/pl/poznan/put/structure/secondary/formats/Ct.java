@@ -1,11 +1,13 @@
 package pl.poznan.put.structure.secondary.formats;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
+import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -18,7 +20,6 @@ import pl.poznan.put.pdb.analysis.MoleculeType;
 import pl.poznan.put.pdb.analysis.PdbChain;
 import pl.poznan.put.pdb.analysis.PdbModel;
 import pl.poznan.put.pdb.analysis.PdbResidue;
-import pl.poznan.put.structure.secondary.DotBracketSymbol;
 
 public class Ct implements Serializable {
     public static class Entry implements Serializable, Comparable<Ct.Entry> {
@@ -166,74 +167,92 @@ public class Ct implements Serializable {
     private static boolean printComments = true;
 
     public static Ct fromString(String data) throws InvalidSecondaryStructureException {
-        List<Entry> entries = new ArrayList<Entry>();
-        boolean firstLine = true;
-
-        for (String line : data.split("\n")) {
-            line = line.trim();
-
-            int hash = line.indexOf('#');
-            if (hash != -1) {
-                line = line.substring(0, hash);
-            }
-
-            if (line.length() == 0) {
-                continue;
-            }
+        try {
+            return Ct.fromReader(new StringReader(data));
+        } catch (IOException e) {
+            throw new InvalidSecondaryStructureException("Failed to read CT data", e);
+        }
+    }
 
-            String[] split = line.split("\\s+");
+    public static Ct fromReader(Reader reader) throws IOException, InvalidSecondaryStructureException {
+        FieldTokenizer tokenizer = new FieldTokenizer(reader);
 
-            if (firstLine) {
-                try {
-                    int lineCount = Integer.parseInt(split[0]);
-                    if (lineCount < 0) {
-                        throw new InvalidSecondaryStructureException("Invalid CT format. Line count < 0 detected: " + line);
-                    }
-                } catch (NumberFormatException e) {
-                    throw new InvalidSecondaryStructureException("Invalid CT format. Failed to parse line count: " + line, e);
+        if (tokenizer.nextLine()) {
+            try {
+                int lineCount = tokenizer.parseInt(0);
+                if (lineCount < 0) {
+                    throw new InvalidSecondaryStructureException("Invalid CT format. Line count < 0 detected: " + tokenizer.getLine());
                 }
-                firstLine = false;
-                continue;
+            } catch (NumberFormatException e) {
+                throw new InvalidSecondaryStructureException("Invalid CT format. Failed to parse line count: " + tokenizer.getLine(), e);
             }
+        }
 
-            if (split.length != 6) {
-                throw new InvalidSecondaryStructureException("Invalid CT format. Six columns not found in line: " + line);
+        int capacity = 256;
+        int[] indices = new int[capacity];
+        char[] sequence = new char[capacity];
+        int[] pairs = new int[capacity];
+        int[] before = new int[capacity];
+        int[] after = new int[capacity];
+        int[] original = new int[capacity];
+        int size = 0;
+        boolean isOrdered = true;
+
+        while (tokenizer.nextLine()) {
+            if (tokenizer.getFieldCount() != 6) {
+                throw new InvalidSecondaryStructureException("Invalid CT format. Six columns not found in line: " + tokenizer.getLine());
             }
 
-            int index, pair, before, after, original;
-            char seq;
+            if (size == capacity) {
+                capacity *= 2;
+                indices = Arrays.copyOf(indices, capacity);
+                sequence = Arrays.copyOf(sequence, capacity);
+                pairs = Arrays.copyOf(pairs, capacity);
+                before = Arrays.copyOf(before, capacity);
+                after = Arrays.copyOf(after, capacity);
+                original = Arrays.copyOf(original, capacity);
+            }
 
             try {
-                index = Integer.valueOf(split[0]);
-                seq = split[1].charAt(0);
-                before = Integer.valueOf(split[2]);
-                after = Integer.valueOf(split[3]);
-                pair = Integer.valueOf(split[4]);
-                original = Integer.valueOf(split[5]);
+                indices[size] = tokenizer.parseInt(0);
+                sequence[size] = tokenizer.getFieldChar(1, 0);
+                before[size] = tokenizer.parseInt(2);
+                after[size] = tokenizer.parseInt(3);
+                pairs[size] = tokenizer.parseInt(4);
+                original[size] = tokenizer.parseInt(5);
             } catch (NumberFormatException e) {
-                throw new InvalidSecondaryStructureException("Invalid CT format. Failed to parse column values: " + line, e);
+                throw new InvalidSecondaryStructureException("Invalid CT format. Failed to parse column values: " + tokenizer.getLine(), e);
             }
 
-            entries.add(new Entry(index, pair, before, after, original, seq));
+            isOrdered &= indices[size] == size + 1;
+            size += 1;
         }
 
+        if (isOrdered) {
+            return new Ct(Arrays.copyOf(sequence, size), Arrays.copyOf(pairs, size), Arrays.copyOf(before, size), Arrays.copyOf(after, size), Arrays.copyOf(original, size), BpSeq.emptyComments(size));
+        }
+
+        List<Entry> entries = new ArrayList<Entry>(size);
+        for (int i = 0; i < size; i++) {
+            entries.add(new Entry(indices[i], pairs[i], before[i], after[i], original[i], sequence[i]));
+        }
         return new Ct(entries);
     }
 
     public static Ct fromBpSeq(BpSeq bpSeq) throws InvalidSecondaryStructureException {
-        List<Ct.Entry> ctEntries = new ArrayList<Ct.Entry>();
-        SortedSet<BpSeq.Entry> entries = bpSeq.getEntries();
-        int size = entries.size();
-
-        for (BpSeq.Entry entry : entries) {
-            int index = entry.getIndex();
-            int pair = entry.getPair();
-            char seq = entry.getSeq();
-            String comment = entry.getComment();
-            ctEntries.add(new Ct.Entry(index, pair, index - 1, (index + 1) % (size + 1), index, seq, comment));
+        int size = bpSeq.size();
+        int[] before = new int[size];
+        int[] after = new int[size];
+        int[] original = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            int index = i + 1;
+            before[i] = index - 1;
+            after[i] = (index + 1) % (size + 1);
+            original[i] = index;
         }
 
-        return new Ct(ctEntries);
+        return new Ct(bpSeq.sequence.clone(), bpSeq.pairs.clone(), before, after, original, bpSeq.comments.clone());
     }
 
     public static Ct fromBpSeqAndPdbModel(BpSeq bpSeq, PdbModel model) throws InvalidSecondaryStructureException {
@@ -244,56 +263,49 @@ public class Ct implements Serializable {
             throw new InvalidSecondaryStructureException("Failed to filter RNA chains", e);
         }
 
-        List<Ct.Entry> ctEntries = new ArrayList<Ct.Entry>();
         List<PdbResidue> residues = rna.getResidues();
-        SortedSet<BpSeq.Entry> entries = bpSeq.getEntries();
-        int i = 0;
+        int size = bpSeq.size();
+        int[] before = new int[size];
+        int[] after = new int[size];
+        int[] original = new int[size];
 
-        for (BpSeq.Entry entry : entries) {
+        for (int i = 0; i < size; i++) {
             PdbResidue residue = residues.get(i);
             PdbChain chain = model.findChainContainingResidue(residue.getResidueIdentifier());
-            List<PdbResidue> chainResidues = chain.getResidues();
-
-            int index = entry.getIndex();
-            int pair = entry.getPair();
-            int before = chainResidues.indexOf(residue);
-            int after = (before + 2) % (chainResidues.size() + 1);
-            int original = residue.getResidueNumber();
-            char seq = entry.getSeq();
-            String comment = entry.getComment();
-            ctEntries.add(new Ct.Entry(index, pair, before, after, original, seq, comment));
-
-            i += 1;
+
+            before[i] = chain.indexOf(residue.getResidueIdentifier());
+            after[i] = (before[i] + 2) % (chain.getResidues().size() + 1);
+            original[i] = residue.getResidueNumber();
         }
 
-        return new Ct(ctEntries);
+        return new Ct(bpSeq.sequence.clone(), bpSeq.pairs.clone(), before, after, original, bpSeq.comments.clone());
     }
 
     public static Ct fromDotBracket(DotBracket dotBracket) throws InvalidSecondaryStructureException {
-        List<Ct.Entry> entries = new ArrayList<Ct.Entry>();
+        int size = dotBracket.getLength();
+        char[] sequence = new char[size];
+        int[] pairs = new int[size];
+        int[] before = new int[size];
+        int[] after = new int[size];
+        int[] original = new int[size];
 
         for (Strand s : dotBracket.getStrands()) {
             for (int i = 0, j = s.getFrom(); j < s.getTo(); i++, j++) {
-                DotBracketSymbol symbol = dotBracket.getSymbol(j);
-                DotBracketSymbol pair = symbol.getPair();
-
-                int index = symbol.getIndex() + 1;
-                int pairIndex = pair != null ? pair.getIndex() + 1 : 0;
-                int after = j == s.getTo() - 1 ? 0 : i + 2;
-                int original = dotBracket.getCtOriginalColumn(symbol);
-                char seq = symbol.getSequence();
-
-                entries.add(new Ct.Entry(index, pairIndex, i, after, original, seq));
+                sequence[j] = dotBracket.sequence.charAt(j);
+                pairs[j] = dotBracket.pairs[j] + 1;
+                before[j] = i;
+                after[j] = j == s.getTo() - 1 ? 0 : i + 2;
+                original[j] = dotBracket.getCtOriginalColumn(j);
             }
         }
 
-        return new Ct(entries);
+        return new Ct(sequence, pairs, before, after, original, BpSeq.emptyComments(size));
     }
 
     public int getStrandCount() {
         int count = 0;
-        for (Ct.Entry entry : entries) {
-            if (entry.getAfter() == 0) {
+        for (int value : after) {
+            if (value == 0) {
                 count += 1;
             }
         }
@@ -304,13 +316,81 @@ public class Ct implements Serializable {
         Ct.printComments = printComments;
     }
 
-    private final SortedSet<Entry> entries;
+    /*
+     * Entry i (0-based) describes residue i + 1. All columns are stored with
+     * the same values as in the CT format.
+     */
+    final char[] sequence;
+    final int[] pairs;
+    final int[] before;
+    final int[] after;
+    final int[] original;
+    final String[] comments;
+
+    private transient SortedSet<Entry> entries;
 
     public Ct(List<Entry> entries) throws InvalidSecondaryStructureException {
-        this.entries = new TreeSet<Entry>(entries);
+        Entry[] sorted = Ct.sortAndCheckNumbering(entries);
+        int size = sorted.length;
+
+        sequence = new char[size];
+        pairs = new int[size];
+        before = new int[size];
+        after = new int[size];
+        original = new int[size];
+        comments = new String[size];
+
+        for (int i = 0; i < size; i++) {
+            Entry entry = sorted[i];
+            sequence[i] = entry.seq;
+            pairs[i] = entry.pair;
+            before[i] = entry.before;
+            after[i] = entry.after;
+            original[i] = entry.original;
+            comments[i] = entry.comment;
+        }
+
+        validate();
+    }
+
+    Ct(char[] sequence, int[] pairs, int[] before, int[] after, int[] original, String[] comments) throws InvalidSecondaryStructureException {
+        super();
+        this.sequence = sequence;
+        this.pairs = pairs;
+        this.before = before;
+        this.after = after;
+        this.original = original;
+        this.comments = comments;
         validate();
     }
 
+    /*
+     * Order entries like a TreeSet would (the first one wins on duplicated
+     * index) and check if they are numbered 1, 2, 3, ...
+     */
+    private static Entry[] sortAndCheckNumbering(List<Entry> entries) throws InvalidSecondaryStructureException {
+        Entry[] sorted = entries.toArray(new Entry[entries.size()]);
+        Arrays.sort(sorted);
+
+        int size = 0;
+        int previous = 0;
+
+        for (Entry entry : sorted) {
+            if (size > 0 && sorted[size - 1].index == entry.index) {
+                continue;
+            }
+            if (entry.index - previous != 1) {
+                throw new InvalidSecondaryStructureException("Inconsistent numbering in CT format: previous=" + previous + ", current" + entry.index);
+            }
+
+            sorted[size] = entry;
+            size += 1;
+            previous = entry.index;
+        }
+
+        return size == sorted.length ? sorted : Arrays.copyOf(sorted, size);
+    }
+
     /*
      * Check if all pairs match.
      */
@@ -319,42 +399,30 @@ public class Ct implements Serializable {
             Ct.LOGGER.trace("CT to be validated:\n" + toString());
         }
 
-        Map<Integer, Integer> map = new HashMap<Integer, Integer>();
-
-        for (Entry e : entries) {
-            map.put(e.index, e.pair);
-        }
-
-        int previous = 0;
-
-        for (Entry e : entries) {
-            if (e.index - previous != 1) {
-                throw new InvalidSecondaryStructureException("Inconsistent numbering in CT format: previous=" + previous + ", current" + e.index);
-            }
+        int size = pairs.length;
 
-            previous = e.index;
-            int pair = map.get(e.index);
+        for (int i = 0; i < size; i++) {
+            int index = i + 1;
+            int pair = pairs[i];
 
             if (pair != 0) {
-                if (!map.containsKey(pair)) {
-                    throw new InvalidSecondaryStructureException("Inconsistency in CT format: (" + e.index + " -> " + pair + ")");
+                if (pair < 1 || pair > size) {
+                    throw new InvalidSecondaryStructureException("Inconsistency in CT format: (" + index + " -> " + pair + ")");
                 }
 
-                if (map.get(pair) != e.index) {
-                    throw new InvalidSecondaryStructureException("Inconsistency in CT format: (" + e.index + " -> " + pair + ") and (" + pair + " -> " + map.get(pair) + ")");
+                if (pairs[pair - 1] != index) {
+                    throw new InvalidSecondaryStructureException("Inconsistency in CT format: (" + index + " -> " + pair + ") and (" + pair + " -> " + pairs[pair - 1] + ")");
                 }
             }
         }
 
-        // previous == maximum index
-
-        for (Entry e : entries) {
-            if (e.before < 0 || e.before >= previous) {
-                throw new InvalidSecondaryStructureException("Inconsistency in CT format. Third column has invalid value in entry: " + e);
+        for (int i = 0; i < size; i++) {
+            if (before[i] < 0 || before[i] >= size) {
+                throw new InvalidSecondaryStructureException("Inconsistency in CT format. Third column has invalid value in entry: " + getEntry(i));
             }
 
-            if (e.after == 1 || e.after < 0 || e.after > previous + 1) {
-                throw new InvalidSecondaryStructureException("Inconsistency in CT format. Fourth column has invalid value in entry: " + e);
+            if (after[i] == 1 || after[i] < 0 || after[i] > size + 1) {
+                throw new InvalidSecondaryStructureException("Inconsistency in CT format. Fourth column has invalid value in entry: " + getEntry(i));
             }
         }
 
@@ -362,45 +430,92 @@ public class Ct implements Serializable {
          * Check if strands' ends are correct
          */
         boolean expectNewStrand = true;
-        Entry prevEntry = null;
 
-        for (Entry e : entries) {
-            if (e.getBefore() != 0 && expectNewStrand || e.getBefore() == 0 && !expectNewStrand) {
-                throw new InvalidSecondaryStructureException("Inconsistency in CT format. The field 'before' is non-zero for the first entry in a strand: " + e);
+        for (int i = 0; i < size; i++) {
+            if (before[i] != 0 && expectNewStrand || before[i] == 0 && !expectNewStrand) {
+                throw new InvalidSecondaryStructureException("Inconsistency in CT format. The field 'before' is non-zero for the first entry in a strand: " + getEntry(i));
             }
 
-            if (prevEntry != null && (prevEntry.getAfter() != 0 && expectNewStrand || prevEntry.getAfter() == 0 && !expectNewStrand)) {
-                throw new InvalidSecondaryStructureException("Inconsistency in CT format. The field 'after' is non-zero for the last entry in a strand: " + prevEntry);
+            if (i > 0 && (after[i - 1] != 0 && expectNewStrand || after[i - 1] == 0 && !expectNewStrand)) {
+                throw new InvalidSecondaryStructureException("Inconsistency in CT format. The field 'after' is non-zero for the last entry in a strand: " + getEntry(i - 1));
             }
 
-            expectNewStrand = e.getAfter() == 0;
-            prevEntry = e;
+            expectNewStrand = after[i] == 0;
         }
 
-        Entry lastEntry = entries.last();
+        int last = size - 1;
 
-        if (lastEntry.after != 0) {
+        if (last >= 0 && after[last] != 0) {
             if (Ct.FIX_LAST_ENTRY) {
-                entries.remove(lastEntry);
-                entries.add(new Entry(lastEntry.index, lastEntry.pair, lastEntry.before, 0, lastEntry.original, lastEntry.seq));
+                after[last] = 0;
+                comments[last] = "";
             } else {
-                throw new InvalidSecondaryStructureException("The field 'after' in the last entry is non-zero: " + lastEntry);
+                throw new InvalidSecondaryStructureException("The field 'after' in the last entry is non-zero: " + getEntry(last));
             }
         }
     }
 
+    private Entry getEntry(int i) {
+        return new Entry(i + 1, pairs[i], before[i], after[i], original[i], sequence[i], comments[i]);
+    }
+
     public SortedSet<Entry> getEntries() {
-        return Collections.unmodifiableSortedSet(entries);
+        if (entries == null) {
+            SortedSet<Entry> set = new TreeSet<Entry>();
+            for (int i = 0; i < pairs.length; i++) {
+                set.add(getEntry(i));
+            }
+            entries = Collections.unmodifiableSortedSet(set);
+        }
+        return entries;
+    }
+
+    public int size() {
+        return pairs.length;
+    }
+
+    public int getPair(int index) {
+        return pairs[index - 1];
+    }
+
+    public int getBefore(int index) {
+        return before[index - 1];
+    }
+
+    public int getAfter(int index) {
+        return after[index - 1];
+    }
+
+    public int getOriginal(int index) {
+        return original[index - 1];
+    }
+
+    public char getSeq(int index) {
+        return sequence[index - 1];
     }
 
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
-        builder.append(entries.size());
+        builder.append(pairs.length);
         builder.append('\n');
 
-        for (Entry e : entries) {
-            builder.append(e.toString());
+        for (int i = 0; i < pairs.length; i++) {
+            builder.append(i + 1);
+            builder.append(' ');
+            builder.append(sequence[i]);
+            builder.append(' ');
+            builder.append(before[i]);
+            builder.append(' ');
+            builder.append(after[i]);
+            builder.append(' ');
+            builder.append(pairs[i]);
+            builder.append(' ');
+            builder.append(original[i]);
+            if (Ct.printComments && !StringUtils.isBlank(comments[i])) {
+                builder.append(" # ");
+                builder.append(comments[i]);
+            }
             builder.append('\n');
         }
 
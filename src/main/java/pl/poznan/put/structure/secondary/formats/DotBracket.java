@@ -2,27 +2,28 @@ package pl.poznan.put.structure.secondary.formats;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.SortedSet;
-import java.util.Stack;
-import java.util.TreeSet;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import org.apache.commons.collections4.BidiMap;
-import org.apache.commons.collections4.bidimap.TreeBidiMap;
-import org.apache.commons.lang3.tuple.Pair;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import pl.poznan.put.structure.secondary.DotBracketSymbol;
 
 public class DotBracket implements Serializable {
-    private static final Logger LOGGER = LoggerFactory.getLogger(DotBracket.class);
-    private static final Pattern DOTBRACKET_PATTERN = Pattern.compile("(>(strand_)?(.+)\n)?([ACGUTRYNacgutryn]+)\n([-.()\\[\\]{}<>A-Za-z]+)");
+    private static final int BRACKET_TYPES = DotBracketSymbol.OPENING.length();
+
+    private static final boolean[] SEQUENCE_CHARACTERS = new boolean[128];
+    private static final boolean[] STRUCTURE_CHARACTERS = new boolean[128];
+
+    static {
+        for (char c : "ACGUTRYNacgutryn".toCharArray()) {
+            DotBracket.SEQUENCE_CHARACTERS[c] = true;
+        }
+        for (char c = 0; c < 128; c++) {
+            DotBracket.STRUCTURE_CHARACTERS[c] = DotBracketSymbol.isPairing(c);
+        }
+        DotBracket.STRUCTURE_CHARACTERS['.'] = true;
+        DotBracket.STRUCTURE_CHARACTERS['-'] = true;
+    }
 
     /*
      * This is just a simple and naive implementation (a greedy heuristic). For
@@ -34,196 +35,298 @@ public class DotBracket implements Serializable {
         return new DotBracket(sequence, structure);
     }
 
-    private static String bpSeqToStructure(BpSeq bpSeq) {
-        Stack<Integer> stack = new Stack<Integer>();
-
-        List<BpSeq.Entry> entries = new ArrayList<BpSeq.Entry>(bpSeq.getEntries());
-        SortedSet<BpSeq.Entry> current = new TreeSet<BpSeq.Entry>();
-        SortedSet<BpSeq.Entry> next = new TreeSet<BpSeq.Entry>(entries);
+    /*
+     * Each round scans the pairs still waiting for a level from left to right
+     * with a stack of opening positions. A closing position whose partner is
+     * still on the stack gets the current level and every opening above the
+     * partner is put off to the next round. A closing position whose partner
+     * was put off is put off as well. Every round is a linear scan and there
+     * are at most as many rounds as bracket types.
+     */
+    private static String bpSeqToStructure(BpSeq bpSeq) throws InvalidSecondaryStructureException {
+        int size = bpSeq.size();
+        int[] pairs = bpSeq.pairs;
+        int[] levels = new int[size];
+        boolean[] isWaiting = new boolean[size];
+        int waitingCount = 0;
+
+        for (int i = 0; i < size; i++) {
+            if (pairs[i] != 0) {
+                isWaiting[i] = true;
+                waitingCount += 1;
+            }
+        }
 
-        int[] levels = new int[entries.size()];
+        int[] stack = new int[size];
+        boolean[] isOnStack = new boolean[size];
         int currentLevel = 0;
 
-        while (!next.isEmpty()) {
-            current.clear();
-            current.addAll(next);
-            next.clear();
-
-            for (BpSeq.Entry entry : current) {
-                int index = entry.getIndex();
-                int pair = entry.getPair();
-
-                if (pair == 0) {
-                    levels[index - 1] = -1;
-                } else if (index < pair) {
-                    stack.push(index);
-                } else if (index > pair) {
-                    if (stack.contains(pair)) {
-                        while (stack.peek() != pair) {
-                            next.add(entries.get(stack.pop() - 1));
-                        }
-                        stack.pop();
-                        levels[index - 1] = currentLevel;
-                        levels[pair - 1] = currentLevel;
-                    } else {
-                        next.add(entry);
+        while (waitingCount > 0) {
+            if (currentLevel == DotBracket.BRACKET_TYPES) {
+                throw new InvalidSecondaryStructureException("Unable to represent structure in dot-bracket, it requires more than " + DotBracket.BRACKET_TYPES + " pseudoknot orders");
+            }
+
+            int top = 0;
+
+            for (int i = 0; i < size; i++) {
+                if (!isWaiting[i]) {
+                    continue;
+                }
+
+                int pair = pairs[i] - 1;
+
+                if (i < pair) {
+                    stack[top] = i;
+                    isOnStack[i] = true;
+                    top += 1;
+                } else if (isOnStack[pair]) {
+                    while (stack[top - 1] != pair) {
+                        top -= 1;
+                        isOnStack[stack[top]] = false;
                     }
+                    top -= 1;
+                    isOnStack[pair] = false;
+
+                    levels[i] = currentLevel;
+                    levels[pair] = currentLevel;
+                    isWaiting[i] = false;
+                    isWaiting[pair] = false;
+                    waitingCount -= 2;
                 }
             }
 
             currentLevel += 1;
         }
 
-        StringBuilder builder = new StringBuilder();
-        char[] bracketsOpening = "([{<ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
-        char[] bracketsClosing = ")]}>abcdefghijklmnopqrstuvwxyz".toCharArray();
+        char[] structure = new char[size];
 
-        for (BpSeq.Entry entry : entries) {
-            int index = entry.getIndex();
-            int pair = entry.getPair();
+        for (int i = 0; i < size; i++) {
+            int pair = pairs[i] - 1;
 
-            if (pair == 0) {
-                builder.append('.');
-            } else if (index < pair) {
-                builder.append(bracketsOpening[levels[index - 1]]);
+            if (pair == -1) {
+                structure[i] = '.';
+            } else if (i < pair) {
+                structure[i] = DotBracketSymbol.OPENING.charAt(levels[i]);
             } else {
-                builder.append(bracketsClosing[levels[index - 1]]);
+                structure[i] = DotBracketSymbol.CLOSING.charAt(levels[i]);
             }
         }
 
-        return builder.toString();
+        return new String(structure);
     }
 
+    /*
+     * Finds consecutive occurrences of an optional '>name' line, a sequence
+     * line and a structure run. This is a linear scan which accepts exactly
+     * the same input as the former regular expression:
+     * (>(strand_)?(.+)\n)?([ACGUTRYNacgutryn]+)\n([-.()\[\]{}<>A-Za-z]+)
+     */
     public static DotBracket fromString(String data) throws InvalidSecondaryStructureException {
-        List<Pair<Integer, Integer>> pairBeginEnd = new ArrayList<Pair<Integer, Integer>>();
+        char[] input = data.toCharArray();
+        int length = input.length;
+
         List<String> strandNames = new ArrayList<String>();
-        StringBuilder sequenceBuilder = new StringBuilder();
-        StringBuilder structureBuilder = new StringBuilder();
-        int begin = 0;
-        int end = 0;
+        List<Integer> strandEnds = new ArrayList<Integer>();
+        StringBuilder sequenceBuilder = new StringBuilder(length / 2);
+        StringBuilder structureBuilder = new StringBuilder(length / 2);
+        int position = 0;
+        int newline = -1;
+        boolean isHeaderFollowed = false;
+
+        while (position < length) {
+            String strandName = null;
+            int sequenceStart = -1;
+
+            if (input[position] == '>') {
+                if (newline < position) {
+                    // a line may contain many '>' so check what follows it only once
+                    newline = DotBracket.indexOf(input, '\n', position);
+                    isHeaderFollowed = DotBracket.isSequenceLine(input, newline + 1);
+                }
+                if (newline > position + 1 && isHeaderFollowed) {
+                    int nameStart = position + 1;
+                    if (newline - nameStart > 7 && new String(input, nameStart, 7).equals("strand_")) {
+                        nameStart += 7;
+                    }
+                    strandName = new String(input, nameStart, newline - nameStart);
+                    sequenceStart = newline + 1;
+                }
+            } else if (DotBracket.isSequence(input[position])) {
+                sequenceStart = position;
+            }
 
-        Matcher matcher = DotBracket.DOTBRACKET_PATTERN.matcher(data);
+            if (sequenceStart == -1) {
+                position += 1;
+                continue;
+            }
 
-        while (matcher.find()) {
-            String strandName = matcher.group(3) != null ? matcher.group(3) : "";
-            String sequence = matcher.group(4);
-            String structure = matcher.group(5);
+            int sequenceEnd = sequenceStart;
+            while (sequenceEnd < length && DotBracket.isSequence(input[sequenceEnd])) {
+                sequenceEnd += 1;
+            }
 
-            if (sequence.length() != structure.length()) {
-                throw new InvalidSecondaryStructureException("Invalid dot-bracket string:\n" + data);
+            int structureStart = sequenceEnd + 1;
+            int structureEnd = structureStart;
+            while (structureEnd < length && DotBracket.isStructure(input[structureEnd])) {
+                structureEnd += 1;
             }
 
-            strandNames.add(strandName);
-            sequenceBuilder.append(sequence);
-            structureBuilder.append(structure);
+            if (sequenceEnd == length || input[sequenceEnd] != '\n' || structureEnd == structureStart) {
+                // no match can start anywhere inside this run of sequence characters
+                position = Math.max(position + 1, sequenceEnd);
+                continue;
+            }
 
-            end += sequence.length();
-            pairBeginEnd.add(Pair.of(begin, end));
-            begin = end;
+            int sequenceLength = sequenceEnd - sequenceStart;
+            int structureLength = structureEnd - structureStart;
+            if (sequenceLength != structureLength) {
+                throw new InvalidSecondaryStructureException("Invalid dot-bracket string:\n" + data);
+            }
+
+            strandNames.add(strandName != null ? strandName : "");
+            sequenceBuilder.append(input, sequenceStart, sequenceLength);
+            structureBuilder.append(input, structureStart, structureLength);
+            strandEnds.add(sequenceBuilder.length());
+            position = structureEnd;
         }
 
         DotBracket dotBracket = new DotBracket(sequenceBuilder.toString(), structureBuilder.toString());
         dotBracket.strands.clear();
 
-        int index = 0;
-        for (Pair<Integer, Integer> pair : pairBeginEnd) {
-            dotBracket.strands.add(new Strand(dotBracket, strandNames.get(index), pair.getLeft(), pair.getRight()));
-            index += 1;
+        int begin = 0;
+        for (int i = 0; i < strandNames.size(); i++) {
+            int end = strandEnds.get(i);
+            dotBracket.strands.add(new Strand(dotBracket, strandNames.get(i), begin, end));
+            begin = end;
         }
 
         return dotBracket;
     }
 
+    private static boolean isSequenceLine(char[] input, int start) {
+        int end = start;
+        while (end < input.length && DotBracket.isSequence(input[end])) {
+            end += 1;
+        }
+        return end > start && end < input.length && input[end] == '\n' && end + 1 < input.length && DotBracket.isStructure(input[end + 1]);
+    }
+
+    private static int indexOf(char[] input, char c, int from) {
+        for (int i = from; i < input.length; i++) {
+            if (input[i] == c) {
+                return i;
+            }
+        }
+        return input.length;
+    }
+
+    private static boolean isSequence(char c) {
+        return c < 128 && DotBracket.SEQUENCE_CHARACTERS[c];
+    }
+
+    private static boolean isStructure(char c) {
+        return c < 128 && DotBracket.STRUCTURE_CHARACTERS[c];
+    }
+
     // FIXME
     protected final List<Strand> strands = new ArrayList<Strand>();
 
-    protected final List<DotBracketSymbol> symbols = new ArrayList<DotBracketSymbol>();
     protected final String sequence;
     protected final String structure;
 
+    /*
+     * pairs[i] is the 0-based index of the symbol paired with i or -1
+     */
+    final int[] pairs;
+
+    private List<DotBracketSymbol> symbols;
+
     public DotBracket(String sequence, String structure) throws InvalidSecondaryStructureException {
         super();
         this.sequence = sequence;
         this.structure = structure;
 
-        if (!sequence.matches("[ACGUTRYNacgutryn]+") || !structure.matches("[-.()\\[\\]{}<>A-Za-z]+")) {
-            throw new InvalidSecondaryStructureException("Invalid dot-bracket:\n" + sequence + "\n" + structure);
-        }
-
-        buildSymbolList();
-        analyzePairing();
-
-        strands.add(new Strand(this, "", 0, structure.length()));
-    }
-
-    private void buildSymbolList() {
         char[] seq = sequence.toCharArray();
         char[] str = structure.toCharArray();
-        assert seq.length == str.length;
 
-        DotBracketSymbol current = new DotBracketSymbol(seq[0], str[0], 0);
-
-        for (int i = 1; i < seq.length; i++) {
-            DotBracketSymbol next = new DotBracketSymbol(seq[i], str[i], i);
-            current.setNext(next);
-            next.setPrevious(current);
-            symbols.add(current);
-            current = next;
+        if (!DotBracket.isValid(seq, str)) {
+            throw new InvalidSecondaryStructureException("Invalid dot-bracket:\n" + sequence + "\n" + structure);
         }
-        symbols.add(current);
 
-        assert symbols.size() == seq.length;
+        pairs = analyzePairing(str);
+        strands.add(new Strand(this, "", 0, structure.length()));
     }
 
-    private void analyzePairing() throws InvalidSecondaryStructureException {
-        BidiMap<Character, Character> parentheses = new TreeBidiMap<Character, Character>();
-        parentheses.put('(', ')');
-        parentheses.put('[', ']');
-        parentheses.put('{', '}');
-        parentheses.put('<', '>');
-
-        for (char c : "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray()) {
-            parentheses.put(c, Character.toLowerCase(c));
+    private static boolean isValid(char[] seq, char[] str) {
+        if (seq.length == 0 || seq.length != str.length) {
+            return false;
         }
 
-        Map<Character, Stack<DotBracketSymbol>> parenthesesStacks = new HashMap<Character, Stack<DotBracketSymbol>>();
-        for (char c : parentheses.keySet()) {
-            parenthesesStacks.put(c, new Stack<DotBracketSymbol>());
+        for (int i = 0; i < seq.length; i++) {
+            if (!DotBracket.isSequence(seq[i]) || !DotBracket.isStructure(str[i])) {
+                return false;
+            }
         }
 
-        for (DotBracketSymbol symbol : symbols) {
-            char str = symbol.getStructure();
-
-            // catch dot '.'
-            if (str == '.' || str == '-') {
-                symbol.setPair(null);
-                continue;
-            }
+        return true;
+    }
 
-            // catch opening '(', '[', etc.
-            if (parentheses.containsKey(str)) {
-                Stack<DotBracketSymbol> stack = parenthesesStacks.get(str);
-                stack.push(symbol);
-                continue;
+    /*
+     * One pass with a stack per bracket type. All stacks are linked lists
+     * stored in a single array: below[i] is the position pushed before i.
+     */
+    private int[] analyzePairing(char[] str) throws InvalidSecondaryStructureException {
+        int[] result = new int[str.length];
+        int[] below = new int[str.length];
+        int[] top = new int[DotBracket.BRACKET_TYPES];
+        Arrays.fill(top, -1);
+
+        for (int i = 0; i < str.length; i++) {
+            char c = str[i];
+            int order = DotBracketSymbol.getOrder(c);
+            result[i] = -1;
+
+            if (DotBracketSymbol.isOpening(c)) {
+                below[i] = top[order];
+                top[order] = i;
+            } else if (DotBracketSymbol.isClosing(c)) {
+                int j = top[order];
+                if (j == -1) {
+                    throw new InvalidSecondaryStructureException("Invalid dot-bracket input:\n" + sequence + "\n" + structure);
+                }
+                top[order] = below[j];
+                result[i] = j;
+                result[j] = i;
             }
+        }
 
-            // catch closing ')', ']', etc.
-            if (parentheses.containsValue(str)) {
-                char opening = parentheses.getKey(str);
-                Stack<DotBracketSymbol> stack = parenthesesStacks.get(opening);
+        return result;
+    }
 
-                if (stack.empty()) {
-                    throw new InvalidSecondaryStructureException("Invalid dot-bracket input:\n" + sequence + "\n" + structure);
+    /*
+     * The linked list of symbols is created only when requested. It replaces
+     * the former protected field 'symbols' for subclasses.
+     */
+    protected synchronized List<DotBracketSymbol> symbolList() {
+        if (symbols == null) {
+            int length = pairs.length;
+            DotBracketSymbol[] array = new DotBracketSymbol[length];
+
+            for (int i = 0; i < length; i++) {
+                array[i] = new DotBracketSymbol(sequence.charAt(i), structure.charAt(i), i);
+                if (i > 0) {
+                    array[i - 1].setNext(array[i]);
+                    array[i].setPrevious(array[i - 1]);
                 }
+            }
 
-                DotBracketSymbol pair = stack.pop();
-                symbol.setPair(pair);
-                pair.setPair(symbol);
-                continue;
+            for (int i = 0; i < length; i++) {
+                array[i].setPair(pairs[i] == -1 ? null : array[pairs[i]]);
             }
 
-            DotBracket.LOGGER.error("Unknown symbol in dot-bracket string: " + str);
+            symbols = Arrays.asList(array);
         }
+        return symbols;
     }
 
     @Override
@@ -291,12 +394,11 @@ public class DotBracket implements Serializable {
     }
 
     public DotBracketSymbol getSymbol(int index) {
-        assert index < symbols.size();
-        return symbols.get(index);
+        return symbolList().get(index);
     }
 
     public List<DotBracketSymbol> getSymbols() {
-        return Collections.unmodifiableList(symbols);
+        return Collections.unmodifiableList(symbolList());
     }
 
     public List<Strand> getStrands() {
@@ -311,16 +413,13 @@ public class DotBracket implements Serializable {
         strands.clear();
 
         int start = 0;
-        int i = 0;
 
-        for (Ct.Entry e : ct.getEntries()) {
-            if (e.getAfter() == 0) {
+        for (int i = 0; i < ct.size(); i++) {
+            if (ct.after[i] == 0) {
                 Strand strand = new Strand(this, "", start, i + 1);
                 strands.add(strand);
                 start = i + 1;
             }
-
-            i += 1;
         }
     }
 
@@ -332,9 +431,10 @@ public class DotBracket implements Serializable {
         for (Strand strand : strands) {
             toCombine.add(strand);
 
-            for (DotBracketSymbol symbol : strand.getSymbols()) {
-                level += symbol.isOpening() ? 1 : 0;
-                level -= symbol.isClosing() ? 1 : 0;
+            for (int i = strand.getFrom(); i < strand.getTo(); i++) {
+                char c = structure.charAt(i);
+                level += DotBracketSymbol.isOpening(c) ? 1 : 0;
+                level -= DotBracketSymbol.isClosing(c) ? 1 : 0;
             }
 
             if (level == 0) {
@@ -347,7 +447,16 @@ public class DotBracket implements Serializable {
     }
 
     @SuppressWarnings("static-method")
+    protected int getCtOriginalColumn(int index) {
+        return index + 1;
+    }
+
+    /*
+     * Ct.fromDotBracket() calls getCtOriginalColumn(int) only, so subclasses
+     * overriding this method must override the int version instead
+     */
+    @Deprecated
     protected int getCtOriginalColumn(DotBracketSymbol symbol) {
-        return symbol.getIndex() + 1;
+        return getCtOriginalColumn(symbol.getIndex());
     }
 }
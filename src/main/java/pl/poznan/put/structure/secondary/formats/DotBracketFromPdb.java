@@ -41,10 +41,10 @@ public class DotBracketFromPdb extends DotBracket {
 
     private void mapSymbolsAndResidues(PdbModel model) {
         List<PdbResidue> residues = model.getResidues();
-        assert residues.size() == symbols.size();
+        assert residues.size() == getLength();
 
         for (int i = 0; i < residues.size(); i++) {
-            DotBracketSymbol symbol = symbols.get(i);
+            DotBracketSymbol symbol = getSymbol(i);
             PdbResidue residue = residues.get(i);
             PdbResidueIdentifier residueIdentifier = residue.getResidueIdentifier();
             symbolToResidue.put(symbol, residueIdentifier);
@@ -73,7 +73,7 @@ public class DotBracketFromPdb extends DotBracket {
     }
 
     @Override
-    protected int getCtOriginalColumn(DotBracketSymbol symbol) {
-        return symbolToResidue.get(symbol).getResidueNumber();
+    protected int getCtOriginalColumn(int index) {
+        return symbolToResidue.get(getSymbol(index)).getResidueNumber();
     }
 }
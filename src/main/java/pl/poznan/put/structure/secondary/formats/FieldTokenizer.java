@@ -0,0 +1,210 @@
+package pl.poznan.put.structure.secondary.formats;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/*
+ * Splits line-based text formats (BPSEQ, CT) into whitespace separated fields.
+ * Everything after '#' is a comment. The fields are kept as offsets into a
+ * reusable line buffer, so no regular expressions and no substrings are
+ * involved unless a line has to be reported in an error message.
+ */
+final class FieldTokenizer {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final Reader reader;
+    private final char[] buffer = new char[FieldTokenizer.BUFFER_SIZE];
+    private int bufferLength = 0;
+    private int bufferPosition = 0;
+    private boolean endOfInput = false;
+
+    private char[] line = new char[256];
+    private int lineLength = 0;
+    private int lineStart = 0;
+    private int lineEnd = 0;
+
+    private int[] fieldStarts = new int[8];
+    private int[] fieldEnds = new int[8];
+    private int fieldCount = 0;
+
+    FieldTokenizer(Reader reader) {
+        super();
+        this.reader = reader;
+    }
+
+    /*
+     * Move to the next line which contains at least one field.
+     */
+    boolean nextLine() throws IOException {
+        while (readLine()) {
+            split();
+            if (fieldCount > 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    int getFieldCount() {
+        return fieldCount;
+    }
+
+    int getFieldLength(int field) {
+        return fieldEnds[field] - fieldStarts[field];
+    }
+
+    char getFieldChar(int field, int offset) {
+        return line[fieldStarts[field] + offset];
+    }
+
+    /*
+     * Parse a field with the same rules as Integer.parseInt (optional sign,
+     * decimal digits, no overflow).
+     */
+    int parseInt(int field) {
+        int start = fieldStarts[field];
+        int end = fieldEnds[field];
+        int i = start;
+        boolean negative = false;
+        int limit = -Integer.MAX_VALUE;
+
+        char first = line[i];
+        if (first == '-' || first == '+') {
+            if (first == '-') {
+                negative = true;
+                limit = Integer.MIN_VALUE;
+            }
+            i += 1;
+            if (i == end) {
+                throw numberFormatException(field);
+            }
+        }
+
+        int multiplicationLimit = limit / 10;
+        int result = 0;
+
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9 || result < multiplicationLimit) {
+                throw numberFormatException(field);
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                throw numberFormatException(field);
+            }
+            result -= digit;
+        }
+
+        return negative ? result : -result;
+    }
+
+    /*
+     * The current line trimmed and with comment removed, exactly as it was
+     * reported in error messages by the previous split()-based parsers.
+     */
+    String getLine() {
+        return new String(line, lineStart, lineEnd - lineStart);
+    }
+
+    private NumberFormatException numberFormatException(int field) {
+        String value = new String(line, fieldStarts[field], getFieldLength(field));
+        return new NumberFormatException("For input string: \"" + value + "\"");
+    }
+
+    private boolean readLine() throws IOException {
+        lineLength = 0;
+
+        while (true) {
+            if (bufferPosition == bufferLength) {
+                if (!fill()) {
+                    return lineLength > 0;
+                }
+            }
+
+            int from = bufferPosition;
+            while (bufferPosition < bufferLength && buffer[bufferPosition] != '\n') {
+                bufferPosition += 1;
+            }
+            append(from, bufferPosition);
+
+            if (bufferPosition < bufferLength) {
+                // skip '\n'
+                bufferPosition += 1;
+                return true;
+            }
+        }
+    }
+
+    private boolean fill() throws IOException {
+        if (endOfInput) {
+            return false;
+        }
+
+        int count = reader.read(buffer, 0, buffer.length);
+        while (count == 0) {
+            count = reader.read(buffer, 0, buffer.length);
+        }
+
+        if (count < 0) {
+            endOfInput = true;
+            return false;
+        }
+
+        bufferLength = count;
+        bufferPosition = 0;
+        return true;
+    }
+
+    private void append(int from, int to) {
+        int count = to - from;
+        if (lineLength + count > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + count));
+        }
+        System.arraycopy(buffer, from, line, lineLength, count);
+        lineLength += count;
+    }
+
+    private void split() {
+        lineStart = 0;
+        lineEnd = lineLength;
+
+        while (lineStart < lineEnd && line[lineStart] <= ' ') {
+            lineStart += 1;
+        }
+        while (lineEnd > lineStart && line[lineEnd - 1] <= ' ') {
+            lineEnd -= 1;
+        }
+
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (line[i] == '#') {
+                lineEnd = i;
+                break;
+            }
+        }
+
+        fieldCount = 0;
+        int i = lineStart;
+
+        while (i < lineEnd) {
+            while (i < lineEnd && line[i] <= ' ') {
+                i += 1;
+            }
+            if (i == lineEnd) {
+                break;
+            }
+
+            if (fieldCount == fieldStarts.length) {
+                fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+                fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+            }
+
+            fieldStarts[fieldCount] = i;
+            while (i < lineEnd && line[i] > ' ') {
+                i += 1;
+            }
+            fieldEnds[fieldCount] = i;
+            fieldCount += 1;
+        }
+    }
+}
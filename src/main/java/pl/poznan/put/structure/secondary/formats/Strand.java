@@ -85,9 +85,10 @@ public class Strand implements Serializable {
     }
 
     public int getPseudoknotOrder() {
+        String structure = parent.getStructure();
         int order = 0;
-        for (DotBracketSymbol symbol : getSymbols()) {
-            order = Math.max(order, symbol.getOrder());
+        for (int i = from; i < to; i++) {
+            order = Math.max(order, DotBracketSymbol.getOrder(structure.charAt(i)));
         }
         return order;
     }
@@ -105,11 +106,9 @@ public class Strand implements Serializable {
      *         outside this strand.
      */
     public boolean isSingleStrand() {
-        List<DotBracketSymbol> symbols = getSymbols();
-
-        for (int i = 1; i < symbols.size() - 1; i++) {
-            DotBracketSymbol symbol = symbols.get(i);
-            if (symbol.isPairing() && symbols.contains(symbol.getPair())) {
+        for (int i = from + 1; i < to - 1; i++) {
+            int pair = parent.pairs[i];
+            if (pair >= from && pair < to) {
                 return false;
             }
         }
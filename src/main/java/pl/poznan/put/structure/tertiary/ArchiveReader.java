@@ -0,0 +1,273 @@
+package pl.poznan.put.structure.tertiary;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import org.apache.commons.io.IOUtils;
+
+/*
+ * Sequential reader of regular file entries from zip, tar or tar.gz archives.
+ * Everything is read from the stream, nothing is extracted to disk.
+ */
+abstract class ArchiveReader implements Closeable {
+    private static final int ZIP_MAGIC = 0x04034b50;
+
+    static ArchiveReader open(InputStream stream) throws IOException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(stream);
+        byte[] header = new byte[4];
+
+        bufferedStream.mark(header.length);
+        int count = IOUtils.read(bufferedStream, header);
+        bufferedStream.reset();
+
+        int magic = header[0] & 0xff | (header[1] & 0xff) << 8 | (header[2] & 0xff) << 16 | (header[3] & 0xff) << 24;
+        if (count == header.length && magic == ArchiveReader.ZIP_MAGIC) {
+            return new Zip(new ZipInputStream(bufferedStream));
+        }
+        if (count >= 2 && (magic & 0xffff) == GZIPInputStream.GZIP_MAGIC) {
+            return new Tar(new GZIPInputStream(bufferedStream));
+        }
+        return new Tar(bufferedStream);
+    }
+
+    /*
+     * Name of the next regular file or null if there are no more entries
+     */
+    abstract String nextEntry() throws IOException;
+
+    /*
+     * Content of the entry returned by the last nextEntry()
+     */
+    abstract byte[] readContent() throws IOException;
+
+    private static final class Zip extends ArchiveReader {
+        private final ZipInputStream stream;
+
+        private Zip(ZipInputStream stream) {
+            super();
+            this.stream = stream;
+        }
+
+        @Override
+        String nextEntry() throws IOException {
+            ZipEntry entry = stream.getNextEntry();
+            while (entry != null && entry.isDirectory()) {
+                entry = stream.getNextEntry();
+            }
+            return entry == null ? null : entry.getName();
+        }
+
+        @Override
+        byte[] readContent() throws IOException {
+            return IOUtils.toByteArray(stream);
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+    }
+
+    /*
+     * ustar/GNU tar with long names ('L' entries) and PAX 'path' records
+     */
+    private static final class Tar extends ArchiveReader {
+        private static final int BLOCK_SIZE = 512;
+
+        private final DataInputStream stream;
+        private final byte[] header = new byte[Tar.BLOCK_SIZE];
+        private long remaining = 0;
+        private long padding = 0;
+
+        private Tar(InputStream stream) {
+            super();
+            this.stream = new DataInputStream(stream);
+        }
+
+        @Override
+        String nextEntry() throws IOException {
+            String longName = null;
+
+            while (true) {
+                skipFully(remaining + padding);
+                remaining = 0;
+                padding = 0;
+
+                if (!readHeader()) {
+                    return null;
+                }
+
+                long size = Tar.parseNumber(header, 124, 12);
+                remaining = size;
+                padding = (Tar.BLOCK_SIZE - size % Tar.BLOCK_SIZE) % Tar.BLOCK_SIZE;
+                char type = (char) header[156];
+
+                if (type == 'L') {
+                    longName = Tar.trimNull(new String(readContent(), "UTF-8"));
+                } else if (type == 'x') {
+                    String path = Tar.parsePaxPath(readContent());
+                    if (path != null) {
+                        longName = path;
+                    }
+                } else if (type == '0' || type == '\0' || type == '7') {
+                    return longName != null ? longName : headerName();
+                } else {
+                    longName = null;
+                }
+            }
+        }
+
+        @Override
+        byte[] readContent() throws IOException {
+            if (remaining > Integer.MAX_VALUE) {
+                throw new IOException("Tar entry is too large: " + remaining);
+            }
+
+            byte[] content = new byte[(int) remaining];
+            try {
+                stream.readFully(content);
+            } catch (EOFException e) {
+                throw new IOException("Truncated tar archive", e);
+            }
+            remaining = 0;
+            return content;
+        }
+
+        @Override
+        public void close() throws IOException {
+            stream.close();
+        }
+
+        /*
+         * False on the end of archive (an empty block or end of stream)
+         */
+        private boolean readHeader() throws IOException {
+            int count = IOUtils.read(stream, header);
+            if (count == 0) {
+                return false;
+            }
+            if (count < Tar.BLOCK_SIZE) {
+                throw new IOException("Truncated tar archive");
+            }
+
+            boolean isEmpty = true;
+            for (byte b : header) {
+                if (b != 0) {
+                    isEmpty = false;
+                    break;
+                }
+            }
+            if (isEmpty) {
+                return false;
+            }
+
+            long checksum = Tar.parseNumber(header, 148, 8);
+            long sum = 0;
+            for (int i = 0; i < Tar.BLOCK_SIZE; i++) {
+                sum += i >= 148 && i < 156 ? ' ' : header[i] & 0xff;
+            }
+            if (sum != checksum) {
+                throw new IOException("Invalid tar header checksum");
+            }
+            return true;
+        }
+
+        private String headerName() throws IOException {
+            String name = Tar.trimNull(new String(header, 0, 100, "UTF-8"));
+            // only POSIX ustar ("ustar\0") has the prefix field, GNU ("ustar ") uses the space differently
+            boolean isPosixUstar = header[257] == 'u' && header[258] == 's' && header[259] == 't' && header[260] == 'a' && header[261] == 'r' && header[262] == 0;
+            if (isPosixUstar && header[345] != 0) {
+                name = Tar.trimNull(new String(header, 345, 155, "UTF-8")) + '/' + name;
+            }
+            return name;
+        }
+
+        private void skipFully(long count) throws IOException {
+            long left = count;
+            while (left > 0) {
+                long skipped = stream.skip(left);
+                if (skipped <= 0) {
+                    if (stream.read() < 0) {
+                        throw new IOException("Truncated tar archive");
+                    }
+                    skipped = 1;
+                }
+                left -= skipped;
+            }
+        }
+
+        /*
+         * Octal number terminated by space or NUL, or a base-256 number when
+         * the highest bit of the first byte is set (GNU extension)
+         */
+        private static long parseNumber(byte[] bytes, int offset, int length) throws IOException {
+            if ((bytes[offset] & 0x80) != 0) {
+                long result = bytes[offset] & 0x7f;
+                for (int i = 1; i < length; i++) {
+                    result = result << 8 | bytes[offset + i] & 0xff;
+                }
+                return result;
+            }
+
+            long result = 0;
+            int i = offset;
+            int end = offset + length;
+
+            while (i < end && (bytes[i] == ' ' || bytes[i] == 0)) {
+                i += 1;
+            }
+            for (; i < end && bytes[i] != ' ' && bytes[i] != 0; i++) {
+                if (bytes[i] < '0' || bytes[i] > '7') {
+                    throw new IOException("Invalid number in tar header");
+                }
+                result = result << 3 | bytes[i] - '0';
+            }
+            return result;
+        }
+
+        /*
+         * PAX records have form "<length> <key>=<value>\n", where length is
+         * in bytes and covers the whole record
+         */
+        private static String parsePaxPath(byte[] records) throws IOException {
+            int position = 0;
+            String path = null;
+
+            while (position < records.length) {
+                int length = 0;
+                int i = position;
+                for (; i < records.length && records[i] != ' '; i++) {
+                    if (records[i] < '0' || records[i] > '9') {
+                        throw new IOException("Invalid PAX header record length");
+                    }
+                    length = length * 10 + records[i] - '0';
+                }
+
+                int end = position + length - 1;
+                if (i >= end || end >= records.length) {
+                    throw new IOException("Invalid PAX header record");
+                }
+
+                String record = new String(records, i + 1, end - i - 1, "UTF-8");
+                if (record.startsWith("path=")) {
+                    path = record.substring(5);
+                }
+                position += length;
+            }
+
+            return path;
+        }
+
+        private static String trimNull(String value) {
+            int end = value.indexOf('\0');
+            return end == -1 ? value : value.substring(0, end);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package pl.poznan.put.structure.tertiary;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/*
+ * Decompresses BGZF (blocked gzip, as produced by bgzip) on several threads.
+ * Every gzip member of such file stores its own compressed size in the 'BC'
+ * extra subfield, so members can be cut out of the stream without inflating
+ * and handed to a thread pool. The output keeps the order of members and at
+ * most a few members per thread are kept in memory.
+ */
+final class BgzfInputStream extends InputStream {
+    static final int HEADER_SIZE = 18;
+    private static final int FOOTER_SIZE = 8;
+    private static final int MEMBERS_PER_THREAD = 4;
+    private static final int MAX_BLOCK_SIZE = 65536;
+
+    /*
+     * Check if the first HEADER_SIZE bytes are a gzip header with FEXTRA flag
+     * and a single 'BC' subfield
+     */
+    static boolean isBgzfHeader(byte[] header, int length) {
+        return length >= BgzfInputStream.HEADER_SIZE && (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && (header[3] & 4) != 0 && header[10] == 6 && header[11] == 0 && header[12] == 'B' && header[13] == 'C' && header[14] == 2 && header[15] == 0;
+    }
+
+    private final DataInputStream input;
+    private final ExecutorService executor;
+    private final int window;
+    private final Queue<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+    private byte[] current = new byte[0];
+    private int position = 0;
+    private boolean endOfInput = false;
+
+    BgzfInputStream(InputStream input, int threadCount) {
+        super();
+        this.input = new DataInputStream(input);
+        this.executor = Executors.newFixedThreadPool(threadCount, new ThreadFactory() {
+            private final ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                // do not keep JVM alive if the stream is never closed
+                Thread thread = defaultFactory.newThread(runnable);
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.window = threadCount * BgzfInputStream.MEMBERS_PER_THREAD;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!ensureAvailable()) {
+            return -1;
+        }
+        return current[position++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        if (!ensureAvailable()) {
+            return -1;
+        }
+
+        int count = Math.min(len, current.length - position);
+        System.arraycopy(current, position, b, off, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        input.close();
+    }
+
+    private boolean ensureAvailable() throws IOException {
+        while (position == current.length) {
+            fillWindow();
+            if (pending.isEmpty()) {
+                return false;
+            }
+
+            current = BgzfInputStream.getResult(pending.poll());
+            position = 0;
+        }
+        return true;
+    }
+
+    private void fillWindow() throws IOException {
+        while (!endOfInput && pending.size() < window) {
+            final byte[] member = readMember();
+            if (member == null) {
+                endOfInput = true;
+                break;
+            }
+
+            pending.add(executor.submit(new Callable<byte[]>() {
+                @Override
+                public byte[] call() throws IOException {
+                    return BgzfInputStream.inflate(member);
+                }
+            }));
+        }
+    }
+
+    /*
+     * Whole member (header, deflate data and footer) or null at the end of
+     * input
+     */
+    private byte[] readMember() throws IOException {
+        byte[] header = new byte[BgzfInputStream.HEADER_SIZE];
+        int count = 0;
+        while (count < header.length) {
+            int read = input.read(header, count, header.length - count);
+            if (read < 0) {
+                break;
+            }
+            count += read;
+        }
+
+        if (count == 0) {
+            return null;
+        }
+        if (!BgzfInputStream.isBgzfHeader(header, count)) {
+            throw new IOException("Invalid BGZF member header");
+        }
+
+        // BSIZE is the total member size minus 1
+        int memberSize = (header[16] & 0xff | (header[17] & 0xff) << 8) + 1;
+        if (memberSize < BgzfInputStream.HEADER_SIZE + BgzfInputStream.FOOTER_SIZE) {
+            throw new IOException("Invalid BGZF member size: " + memberSize);
+        }
+
+        byte[] member = new byte[memberSize];
+        System.arraycopy(header, 0, member, 0, header.length);
+        try {
+            input.readFully(member, header.length, memberSize - header.length);
+        } catch (EOFException e) {
+            throw new IOException("Truncated BGZF member", e);
+        }
+        return member;
+    }
+
+    private static byte[] inflate(byte[] member) throws IOException {
+        int footer = member.length - BgzfInputStream.FOOTER_SIZE;
+        long expectedCrc = BgzfInputStream.readInt(member, footer) & 0xffffffffL;
+        int size = BgzfInputStream.readInt(member, footer + 4);
+        if (size < 0 || size > BgzfInputStream.MAX_BLOCK_SIZE) {
+            throw new IOException("Invalid BGZF member uncompressed size: " + size);
+        }
+
+        byte[] result = new byte[size];
+
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, BgzfInputStream.HEADER_SIZE, footer - BgzfInputStream.HEADER_SIZE);
+            int count = 0;
+            while (count < size) {
+                int inflated = inflater.inflate(result, count, size - count);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput())) {
+                    break;
+                }
+                count += inflated;
+            }
+
+            if (count != size) {
+                throw new IOException("Corrupted BGZF member, expected " + size + " bytes, got: " + count);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupted BGZF member", e);
+        } finally {
+            inflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(result, 0, size);
+        if (crc.getValue() != expectedCrc) {
+            throw new IOException("Corrupted BGZF member, CRC32 mismatch");
+        }
+        return result;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return bytes[offset] & 0xff | (bytes[offset + 1] & 0xff) << 8 | (bytes[offset + 2] & 0xff) << 16 | (bytes[offset + 3] & 0xff) << 24;
+    }
+
+    private static byte[] getResult(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while inflating BGZF member", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to inflate BGZF member", cause);
+        }
+    }
+}
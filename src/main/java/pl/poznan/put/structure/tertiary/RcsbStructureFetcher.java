@@ -0,0 +1,17 @@
+package pl.poznan.put.structure.tertiary;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/*
+ * Downloads gzipped PDB files from RCSB.
+ */
+public class RcsbStructureFetcher implements StructureFetcher {
+    private static final String URL_FORMAT = "https://files.rcsb.org/download/%s.pdb.gz";
+
+    @Override
+    public InputStream fetch(String pdbId) throws IOException {
+        return new URL(String.format(RcsbStructureFetcher.URL_FORMAT, pdbId)).openStream();
+    }
+}
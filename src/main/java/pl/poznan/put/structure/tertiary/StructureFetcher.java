@@ -0,0 +1,12 @@
+package pl.poznan.put.structure.tertiary;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/*
+ * Source of PDB files by their identifiers, e.g. a remote server or a local
+ * directory. The content may be plain or gzipped.
+ */
+public interface StructureFetcher {
+    InputStream fetch(String pdbId) throws IOException;
+}
@@ -1,20 +1,24 @@
 package pl.poznan.put.structure.tertiary;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.zip.GZIPInputStream;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.apache.commons.lang3.StringUtils;
 
 import pl.poznan.put.pdb.PdbParsingException;
@@ -30,6 +34,9 @@ public final class StructureManager {
     private static final String ENCODING_UTF_8 = "UTF-8";
     private static final List<StructureInfo> STRUCTURES = new ArrayList<StructureInfo>();
     private static final PdbParser PDB_READER = new PdbParser(false);
+    private static final int ENTRIES_PER_THREAD = 4;
+
+    private static volatile StructureMirror mirror = new StructureMirror(new File(FileUtils.getTempDirectory(), "pdb-mirror"), new RcsbStructureFetcher());
 
     public static List<PdbModel> getAllStructures() {
         List<PdbModel> result = new ArrayList<PdbModel>();
@@ -107,63 +114,60 @@ public final class StructureManager {
             return models;
         }
 
-        String fileContent = StructureManager.readFileUnzipIfNeeded(file);
         String name = file.getName();
-
-        if (name.endsWith(".cif") || name.endsWith(".cif.gz")) {
-            if (!StructureManager.isMmCif(fileContent)) {
-                throw new IOException("File is not a mmCIF structure: " + file);
-            }
-            // TODO: Implement a parser for mmCIF format
-            throw new UnsupportedOperationException("Sorry, mmCIF parsing is currently unavailable");
-        }
-
-        if (!StructureManager.isPdb(fileContent)) {
-            throw new IOException("File is not a PDB structure: " + file);
-        }
-
-        List<PdbModel> structures = StructureManager.PDB_READER.parse(fileContent);
-        StructureManager.storeStructureInfo(file, structures);
-        return structures;
-    }
-
-    private static String readFileUnzipIfNeeded(File file) throws IOException {
-        ByteArrayOutputStream copyStream = null;
-        FileInputStream inputStream = null;
+        InputStream fileStream = null;
+        InputStream stream = null;
 
         try {
-            inputStream = new FileInputStream(file);
-            copyStream = new ByteArrayOutputStream();
-            IOUtils.copy(inputStream, copyStream);
-            byte[] byteArray = copyStream.toByteArray();
+            fileStream = new FileInputStream(file);
+            stream = StructureManager.openUnzipIfNeeded(fileStream);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StructureManager.ENCODING_UTF_8));
 
-            if (StructureManager.isGzipStream(byteArray)) {
-                return StructureManager.unzipContent(byteArray);
+            if (name.endsWith(".cif") || name.endsWith(".cif.gz")) {
+                if (!StructureManager.isMmCif(reader)) {
+                    throw new IOException("File is not a mmCIF structure: " + file);
+                }
+                // TODO: Implement a parser for mmCIF format
+                throw new UnsupportedOperationException("Sorry, mmCIF parsing is currently unavailable");
             }
 
-            return copyStream.toString(StructureManager.ENCODING_UTF_8);
+            List<PdbModel> structures = StructureManager.PDB_READER.parse(reader);
+            if (structures.isEmpty()) {
+                throw new IOException("File is not a PDB structure: " + file);
+            }
+
+            StructureManager.storeStructureInfo(file, structures);
+            return structures;
         } finally {
-            IOUtils.closeQuietly(inputStream);
-            IOUtils.closeQuietly(copyStream);
+            IOUtils.closeQuietly(stream);
+            IOUtils.closeQuietly(fileStream);
         }
     }
 
-    private static String unzipContent(byte[] byteArray) throws IOException {
-        ByteArrayInputStream inputStream = null;
-        GZIPInputStream gzipInputStream = null;
+    /*
+     * Peek at the first bytes and decompress the stream if it is gzipped.
+     * BGZF files (a series of gzip members with sizes in headers) are
+     * inflated in parallel.
+     */
+    static InputStream openUnzipIfNeeded(InputStream stream) throws IOException {
+        BufferedInputStream bufferedStream = new BufferedInputStream(stream);
+        byte[] header = new byte[BgzfInputStream.HEADER_SIZE];
+
+        bufferedStream.mark(header.length);
+        int count = IOUtils.read(bufferedStream, header);
+        bufferedStream.reset();
 
-        try {
-            inputStream = new ByteArrayInputStream(byteArray);
-            gzipInputStream = new GZIPInputStream(inputStream);
-            return IOUtils.toString(gzipInputStream);
-        } finally {
-            IOUtils.closeQuietly(gzipInputStream);
-            IOUtils.closeQuietly(inputStream);
+        if (BgzfInputStream.isBgzfHeader(header, count)) {
+            return new BgzfInputStream(bufferedStream, Runtime.getRuntime().availableProcessors());
         }
+        if (StructureManager.isGzipStream(header, count)) {
+            return new GZIPInputStream(bufferedStream);
+        }
+        return bufferedStream;
     }
 
-    private static boolean isGzipStream(byte[] bytes) {
-        if (bytes.length < 2) {
+    private static boolean isGzipStream(byte[] bytes, int length) {
+        if (length < 2) {
             return false;
         }
 
@@ -171,25 +175,131 @@ public final class StructureManager {
         return GZIPInputStream.GZIP_MAGIC == head;
     }
 
-    public static List<PdbModel> loadStructure(String pdbId) throws IOException, PdbParsingException {
-        InputStream stream = null;
+    public static List<PdbModel> loadArchive(File archive) throws IOException, PdbParsingException {
+        return StructureManager.loadArchive(archive, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Load all structures from a zip, tar or tar.gz archive without
+     * extracting it. Entries named *.pdb or *.ent (optionally gzipped) are
+     * parsed in parallel and named after their paths in the archive. All of
+     * them are remembered with the archive as their path.
+     *
+     * @param archive
+     *            Path to the archive.
+     * @param threadCount
+     *            Number of parsing threads.
+     * @return Structures from all entries in the order of entries.
+     * @throws IOException
+     * @throws PdbParsingException
+     */
+    public static List<PdbModel> loadArchive(File archive, int threadCount) throws IOException, PdbParsingException {
+        List<PdbModel> models = StructureManager.getModels(archive);
+        if (models.size() > 0) {
+            return models;
+        }
+
+        ArchiveReader reader = null;
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+        // entries read ahead of parsing, so that memory stays bounded
+        int window = threadCount * StructureManager.ENTRIES_PER_THREAD;
+        List<String> names = new ArrayList<String>();
+        List<Future<List<PdbModel>>> futures = new ArrayList<Future<List<PdbModel>>>();
+        List<List<PdbModel>> results = new ArrayList<List<PdbModel>>();
 
         try {
-            URL url = new URL("http://www.rcsb.org/pdb/download/downloadFile.do?fileFormat=pdb&compression=NO&structureId=" + pdbId);
-            stream = url.openStream();
-            String pdbContent = IOUtils.toString(stream, StructureManager.ENCODING_UTF_8);
+            reader = ArchiveReader.open(new FileInputStream(archive));
+            String entryName;
 
-            File pdbFile = File.createTempFile("mcq", ".pdb");
-            FileUtils.writeStringToFile(pdbFile, pdbContent, StructureManager.ENCODING_UTF_8);
+            while ((entryName = reader.nextEntry()) != null) {
+                String name = StructureManager.stripPdbExtension(entryName);
+                if (name == null) {
+                    continue;
+                }
 
-            List<PdbModel> models = StructureManager.PDB_READER.parse(pdbContent);
-            StructureManager.storeStructureInfo(pdbFile, models);
-            return models;
+                if (futures.size() - results.size() >= window) {
+                    results.add(StructureManager.getResult(futures.get(results.size())));
+                }
+
+                names.add(name);
+                futures.add(executor.submit(new EntryParser(entryName, reader.readContent())));
+            }
+
+            while (results.size() < futures.size()) {
+                results.add(StructureManager.getResult(futures.get(results.size())));
+            }
         } finally {
-            IOUtils.closeQuietly(stream);
+            executor.shutdownNow();
+            IOUtils.closeQuietly(reader);
+        }
+
+        List<PdbModel> result = new ArrayList<PdbModel>();
+        for (int i = 0; i < results.size(); i++) {
+            StructureManager.storeStructureInfo(archive, names.get(i), results.get(i));
+            result.addAll(results.get(i));
+        }
+        return result;
+    }
+
+    /*
+     * Entry name without .pdb, .ent, .pdb.gz or .ent.gz extension or null
+     * if it has none of them
+     */
+    private static String stripPdbExtension(String entryName) {
+        for (String extension : new String[] { ".pdb", ".ent", ".pdb.gz", ".ent.gz" }) {
+            if (entryName.endsWith(extension)) {
+                return entryName.substring(0, entryName.length() - extension.length());
+            }
+        }
+        return null;
+    }
+
+    private static <T> T getResult(Future<T> future) throws IOException, PdbParsingException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while parsing archive entries", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof PdbParsingException) {
+                throw (PdbParsingException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to parse archive entry", cause);
         }
     }
 
+    /**
+     * Load a structure by its PDB identifier. The file is taken from the
+     * local mirror or fetched into it first.
+     *
+     * @param pdbId
+     *            Identifier of the structure.
+     * @return Structure object.
+     * @throws IOException
+     * @throws PdbParsingException
+     */
+    public static List<PdbModel> loadStructure(String pdbId) throws IOException, PdbParsingException {
+        return StructureManager.loadStructure(StructureManager.mirror.getFile(pdbId));
+    }
+
+    public static StructureMirror getMirror() {
+        return StructureManager.mirror;
+    }
+
+    /*
+     * Replace the mirror, e.g. with one using a local fetcher for offline use
+     */
+    public static void setMirror(StructureMirror mirror) {
+        StructureManager.mirror = mirror;
+    }
+
     public static void remove(File path) {
         List<Integer> toRemove = new ArrayList<Integer>();
 
@@ -200,34 +310,22 @@ public final class StructureManager {
             }
         }
 
-        for (int i : toRemove) {
-            StructureManager.STRUCTURES.remove(i);
+        // from the end, so that the remaining indices stay valid
+        for (int i = toRemove.size() - 1; i >= 0; i--) {
+            StructureManager.STRUCTURES.remove((int) toRemove.get(i));
         }
     }
 
-    private static boolean isMmCif(String fileContent) {
-        return fileContent.startsWith("data_");
-    }
-
-    private static boolean isPdb(String fileContent) {
-        Pattern pdbPattern = Pattern.compile("^ATOM", Pattern.MULTILINE);
-        Matcher matcher = pdbPattern.matcher(fileContent);
-        return matcher.find();
+    private static boolean isMmCif(BufferedReader reader) throws IOException {
+        char[] prefix = new char[5];
+        reader.mark(prefix.length);
+        int count = IOUtils.read(reader, prefix);
+        reader.reset();
+        return count == prefix.length && "data_".equals(new String(prefix));
     }
 
     private static void storeStructureInfo(File file, List<PdbModel> structures) {
-        String format = "%s";
-
-        if (structures.size() > 1) {
-            int count = structures.size();
-            int order = 10;
-            int leading = 1;
-            while (order < count) {
-                leading++;
-                order *= 10;
-            }
-            format = "%s.%0" + leading + "d";
-        }
+        String format = StructureManager.nameFormat(structures.size());
 
         for (int i = 0; i < structures.size(); i++) {
             PdbModel model = structures.get(i);
@@ -246,6 +344,55 @@ public final class StructureManager {
         }
     }
 
+    private static void storeStructureInfo(File file, String name, List<PdbModel> structures) {
+        String format = StructureManager.nameFormat(structures.size());
+
+        for (int i = 0; i < structures.size(); i++) {
+            StructureManager.STRUCTURES.add(new StructureInfo(structures.get(i), file, String.format(format, name, i + 1)));
+        }
+    }
+
+    private static String nameFormat(int count) {
+        if (count <= 1) {
+            return "%s";
+        }
+
+        int order = 10;
+        int leading = 1;
+        while (order < count) {
+            leading++;
+            order *= 10;
+        }
+        return "%s.%0" + leading + "d";
+    }
+
     private StructureManager() {
     }
+
+    private static final class EntryParser implements Callable<List<PdbModel>> {
+        private final String entryName;
+        private final byte[] content;
+
+        private EntryParser(String entryName, byte[] content) {
+            super();
+            this.entryName = entryName;
+            this.content = content;
+        }
+
+        @Override
+        public List<PdbModel> call() throws IOException, PdbParsingException {
+            InputStream stream = null;
+
+            try {
+                stream = StructureManager.openUnzipIfNeeded(new ByteArrayInputStream(content));
+                List<PdbModel> structures = new PdbParser(false).parse(new InputStreamReader(stream, StructureManager.ENCODING_UTF_8));
+                if (structures.isEmpty()) {
+                    throw new IOException("Archive entry is not a PDB structure: " + entryName);
+                }
+                return structures;
+            } finally {
+                IOUtils.closeQuietly(stream);
+            }
+        }
+    }
 }
@@ -0,0 +1,159 @@
+package pl.poznan.put.structure.tertiary;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/*
+ * Local on-disk copy of PDB files keyed by their identifiers. Every file is
+ * fetched only once and stored gzipped in a layout like the one of the PDB
+ * archive (e.g. 1ehz is kept in eh/1ehz.pdb.gz). Concurrent requests for the
+ * same identifier wait for a single download.
+ */
+public class StructureMirror {
+    private final File directory;
+    private final StructureFetcher fetcher;
+    private final ConcurrentMap<String, FutureTask<File>> inProgress = new ConcurrentHashMap<String, FutureTask<File>>();
+
+    public StructureMirror(File directory, StructureFetcher fetcher) {
+        super();
+        this.directory = directory;
+        this.fetcher = fetcher;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public StructureFetcher getFetcher() {
+        return fetcher;
+    }
+
+    /**
+     * Get a path to the gzipped PDB file, fetching it first if it is not in
+     * the mirror yet.
+     *
+     * @param pdbId
+     *            Identifier of the structure (case insensitive).
+     * @return Path to the file inside the mirror directory.
+     * @throws IOException
+     *             If the identifier is invalid or fetching failed.
+     */
+    public File getFile(String pdbId) throws IOException {
+        final String key = StructureMirror.normalize(pdbId);
+        final File file = getPath(key);
+        if (file.isFile()) {
+            return file;
+        }
+
+        FutureTask<File> task = new FutureTask<File>(new Callable<File>() {
+            @Override
+            public File call() throws IOException {
+                return download(key, file);
+            }
+        });
+        FutureTask<File> existing = inProgress.putIfAbsent(key, task);
+
+        if (existing == null) {
+            try {
+                task.run();
+            } finally {
+                inProgress.remove(key, task);
+            }
+            return StructureMirror.getResult(task);
+        }
+        return StructureMirror.getResult(existing);
+    }
+
+    public boolean contains(String pdbId) throws IOException {
+        return getPath(StructureMirror.normalize(pdbId)).isFile();
+    }
+
+    private File getPath(String key) {
+        File subdirectory = new File(directory, key.substring(1, 3));
+        return new File(subdirectory, key + ".pdb.gz");
+    }
+
+    private File download(String key, File file) throws IOException {
+        if (file.isFile()) {
+            return file;
+        }
+
+        File parent = file.getParentFile();
+        FileUtils.forceMkdir(parent);
+        // a temporary file in the same directory, so that it can be renamed
+        File temporaryFile = File.createTempFile(key, ".tmp", parent);
+        InputStream stream = null;
+        OutputStream output = null;
+
+        try {
+            stream = new BufferedInputStream(fetcher.fetch(key));
+            output = new FileOutputStream(temporaryFile);
+
+            if (StructureMirror.isGzipped(stream)) {
+                IOUtils.copy(stream, output);
+            } else {
+                output = new GZIPOutputStream(output);
+                IOUtils.copy(stream, output);
+            }
+            output.close();
+
+            if (!temporaryFile.renameTo(file) && !file.isFile()) {
+                throw new IOException("Failed to store " + key + " in " + file);
+            }
+            return file;
+        } finally {
+            IOUtils.closeQuietly(stream);
+            IOUtils.closeQuietly(output);
+            FileUtils.deleteQuietly(temporaryFile);
+        }
+    }
+
+    private static boolean isGzipped(InputStream stream) throws IOException {
+        byte[] header = new byte[2];
+        stream.mark(header.length);
+        int count = IOUtils.read(stream, header);
+        stream.reset();
+        return count == header.length && (header[0] & 0xff | (header[1] & 0xff) << 8) == GZIPInputStream.GZIP_MAGIC;
+    }
+
+    private static String normalize(String pdbId) throws IOException {
+        String key = pdbId.trim().toLowerCase(Locale.ENGLISH);
+        if (key.length() != 4 || !key.matches("[0-9a-z]{4}")) {
+            throw new IOException("Invalid PDB identifier: " + pdbId);
+        }
+        return key;
+    }
+
+    private static File getResult(FutureTask<File> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a structure", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Failed to fetch a structure", cause);
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package pl.poznan.put.structure.tertiary;
+
+import java.util.Arrays;
+import java.util.List;
+
+import pl.poznan.put.atom.AtomName;
+import pl.poznan.put.pdb.PdbAtomLine;
+import pl.poznan.put.pdb.analysis.PdbResidue;
+import pl.poznan.put.pdb.analysis.ResidueCollection;
+
+/**
+ * Optimal superposition of matched atoms with the quaternion characteristic
+ * polynomial (QCP) method: D. L. Theobald, Acta Cryst. A61 (2005) 478-480 and
+ * P. Liu, D. K. Agrafiotis, D. L. Theobald, J. Comput. Chem. 31 (2010)
+ * 1561-1563.
+ *
+ * Coordinates are given as flat arrays of consecutive x, y, z values. For
+ * clustering, extract matched coordinates once with
+ * {@link #matchCoordinates(ResidueCollection, ResidueCollection)} and call
+ * {@link #rmsd(double[], double[])}, which does not compute the rotation.
+ */
+public final class StructureSuperimposer {
+    private static final double EIGENVALUE_PRECISION = 1.0e-11;
+    private static final double EIGENVECTOR_PRECISION = 1.0e-6;
+    private static final int MAX_ITERATIONS = 50;
+
+    /*
+     * Indices in the work array: 9 elements of the inner product matrix, then
+     * centroids of the target and of the model.
+     */
+    private static final int TARGET_CENTROID = 9;
+    private static final int MODEL_CENTROID = 12;
+    private static final int WORK_SIZE = 15;
+
+    /**
+     * Pair heavy atoms of corresponding residues by their names. Both
+     * collections must have the same number of residues.
+     *
+     * @param target The reference structure.
+     * @param model The structure to be moved.
+     * @return Two arrays of equal length: target and model coordinates.
+     */
+    public static double[][] matchCoordinates(ResidueCollection target, ResidueCollection model) {
+        List<PdbResidue> targetResidues = target.getResidues();
+        List<PdbResidue> modelResidues = model.getResidues();
+
+        if (targetResidues.size() != modelResidues.size()) {
+            throw new IllegalArgumentException("Different number of residues in target and model: " + targetResidues.size() + " vs " + modelResidues.size());
+        }
+
+        int capacity = 0;
+        for (PdbResidue residue : targetResidues) {
+            capacity += 3 * residue.getAtoms().size();
+        }
+
+        double[] targetCoordinates = new double[capacity];
+        double[] modelCoordinates = new double[capacity];
+        int size = 0;
+
+        for (int i = 0; i < targetResidues.size(); i++) {
+            PdbResidue targetResidue = targetResidues.get(i);
+            PdbResidue modelResidue = modelResidues.get(i);
+            List<AtomName> targetNames = targetResidue.getAtomNames();
+            List<AtomName> modelNames = modelResidue.getAtomNames();
+
+            for (int j = 0; j < targetNames.size(); j++) {
+                AtomName atomName = targetNames.get(j);
+                if (atomName == AtomName.UNKNOWN || !atomName.isHeavy() || targetNames.indexOf(atomName) != j) {
+                    continue;
+                }
+
+                int k = modelNames.indexOf(atomName);
+                if (k == -1) {
+                    continue;
+                }
+
+                PdbAtomLine targetAtom = targetResidue.getAtoms().get(j);
+                PdbAtomLine modelAtom = modelResidue.getAtoms().get(k);
+                targetCoordinates[size] = targetAtom.getX();
+                targetCoordinates[size + 1] = targetAtom.getY();
+                targetCoordinates[size + 2] = targetAtom.getZ();
+                modelCoordinates[size] = modelAtom.getX();
+                modelCoordinates[size + 1] = modelAtom.getY();
+                modelCoordinates[size + 2] = modelAtom.getZ();
+                size += 3;
+            }
+        }
+
+        return new double[][] { Arrays.copyOf(targetCoordinates, size), Arrays.copyOf(modelCoordinates, size) };
+    }
+
+    public static double rmsd(ResidueCollection target, ResidueCollection model) {
+        double[][] coordinates = StructureSuperimposer.matchCoordinates(target, model);
+        return StructureSuperimposer.rmsd(coordinates[0], coordinates[1]);
+    }
+
+    public static Superposition superpose(ResidueCollection target, ResidueCollection model) {
+        double[][] coordinates = StructureSuperimposer.matchCoordinates(target, model);
+        return StructureSuperimposer.superpose(coordinates[0], coordinates[1]);
+    }
+
+    /**
+     * Compute RMSD after optimal superposition without computing the rotation.
+     *
+     * @param target Coordinates of the reference atoms.
+     * @param model Coordinates of the atoms to be moved.
+     * @return The minimal RMSD.
+     */
+    public static double rmsd(double[] target, double[] model) {
+        int count = StructureSuperimposer.checkAtomCount(target, model);
+        double[] work = new double[StructureSuperimposer.WORK_SIZE];
+        double e0 = StructureSuperimposer.innerProduct(target, model, work);
+        double eigenvalue = StructureSuperimposer.maxEigenvalue(work, e0);
+        return StructureSuperimposer.rmsd(e0, eigenvalue, count);
+    }
+
+    public static Superposition superpose(double[] target, double[] model) {
+        int count = StructureSuperimposer.checkAtomCount(target, model);
+        double[] work = new double[StructureSuperimposer.WORK_SIZE];
+        double e0 = StructureSuperimposer.innerProduct(target, model, work);
+        double eigenvalue = StructureSuperimposer.maxEigenvalue(work, e0);
+        double[] rotation = StructureSuperimposer.rotation(work, eigenvalue);
+
+        double[] translation = new double[3];
+        for (int i = 0; i < 3; i++) {
+            translation[i] = work[StructureSuperimposer.TARGET_CENTROID + i];
+            for (int j = 0; j < 3; j++) {
+                translation[i] -= rotation[3 * i + j] * work[StructureSuperimposer.MODEL_CENTROID + j];
+            }
+        }
+
+        double rmsd = StructureSuperimposer.rmsd(e0, eigenvalue, count);
+        return new Superposition(rmsd, rotation, translation, count);
+    }
+
+    private static int checkAtomCount(double[] target, double[] model) {
+        if (target.length != model.length || target.length % 3 != 0) {
+            throw new IllegalArgumentException("Coordinate arrays must have equal length divisible by 3, got: " + target.length + " and " + model.length);
+        }
+        if (target.length == 0) {
+            throw new IllegalArgumentException("Cannot superpose empty sets of atoms");
+        }
+        return target.length / 3;
+    }
+
+    private static double rmsd(double e0, double eigenvalue, int count) {
+        // the abs() guards against tiny negative values due to rounding
+        return Math.sqrt(Math.abs(2.0 * (e0 - eigenvalue) / count));
+    }
+
+    /*
+     * Fills work array with centroids and the inner product matrix of centered
+     * coordinates. Returns half of the sum of squared norms.
+     */
+    private static double innerProduct(double[] target, double[] model, double[] work) {
+        int count = target.length / 3;
+
+        for (int i = 0; i < target.length; i += 3) {
+            for (int j = 0; j < 3; j++) {
+                work[StructureSuperimposer.TARGET_CENTROID + j] += target[i + j];
+                work[StructureSuperimposer.MODEL_CENTROID + j] += model[i + j];
+            }
+        }
+        for (int j = 0; j < 3; j++) {
+            work[StructureSuperimposer.TARGET_CENTROID + j] /= count;
+            work[StructureSuperimposer.MODEL_CENTROID + j] /= count;
+        }
+
+        double tx0 = work[StructureSuperimposer.TARGET_CENTROID];
+        double ty0 = work[StructureSuperimposer.TARGET_CENTROID + 1];
+        double tz0 = work[StructureSuperimposer.TARGET_CENTROID + 2];
+        double mx0 = work[StructureSuperimposer.MODEL_CENTROID];
+        double my0 = work[StructureSuperimposer.MODEL_CENTROID + 1];
+        double mz0 = work[StructureSuperimposer.MODEL_CENTROID + 2];
+
+        double g1 = 0;
+        double g2 = 0;
+        double sxx = 0, sxy = 0, sxz = 0, syx = 0, syy = 0, syz = 0, szx = 0, szy = 0, szz = 0;
+
+        for (int i = 0; i < target.length; i += 3) {
+            double x1 = target[i] - tx0;
+            double y1 = target[i + 1] - ty0;
+            double z1 = target[i + 2] - tz0;
+            double x2 = model[i] - mx0;
+            double y2 = model[i + 1] - my0;
+            double z2 = model[i + 2] - mz0;
+
+            g1 += x1 * x1 + y1 * y1 + z1 * z1;
+            g2 += x2 * x2 + y2 * y2 + z2 * z2;
+
+            sxx += x1 * x2;
+            sxy += x1 * y2;
+            sxz += x1 * z2;
+            syx += y1 * x2;
+            syy += y1 * y2;
+            syz += y1 * z2;
+            szx += z1 * x2;
+            szy += z1 * y2;
+            szz += z1 * z2;
+        }
+
+        work[0] = sxx;
+        work[1] = sxy;
+        work[2] = sxz;
+        work[3] = syx;
+        work[4] = syy;
+        work[5] = syz;
+        work[6] = szx;
+        work[7] = szy;
+        work[8] = szz;
+        return (g1 + g2) * 0.5;
+    }
+
+    /*
+     * The largest root of the characteristic polynomial of the key matrix,
+     * found with Newton-Raphson starting from the upper bound e0.
+     */
+    private static double maxEigenvalue(double[] s, double e0) {
+        double sxx = s[0], sxy = s[1], sxz = s[2];
+        double syx = s[3], syy = s[4], syz = s[5];
+        double szx = s[6], szy = s[7], szz = s[8];
+
+        double sxx2 = sxx * sxx, syy2 = syy * syy, szz2 = szz * szz;
+        double sxy2 = sxy * sxy, syz2 = syz * syz, sxz2 = sxz * sxz;
+        double syx2 = syx * syx, szy2 = szy * szy, szx2 = szx * szx;
+
+        double syzSzymSyySzz2 = 2.0 * (syz * szy - syy * szz);
+        double sxx2Syy2Szz2Syz2Szy2 = syy2 + szz2 - sxx2 + syz2 + szy2;
+
+        double c2 = -2.0 * (sxx2 + syy2 + szz2 + sxy2 + syx2 + sxz2 + szx2 + syz2 + szy2);
+        double c1 = 8.0 * (sxx * syz * szy + syy * szx * sxz + szz * sxy * syx - sxx * syy * szz - syz * szx * sxy - szy * syx * sxz);
+
+        double sxzpSzx = sxz + szx;
+        double syzpSzy = syz + szy;
+        double sxypSyx = sxy + syx;
+        double syzmSzy = syz - szy;
+        double sxzmSzx = sxz - szx;
+        double sxymSyx = sxy - syx;
+        double sxxpSyy = sxx + syy;
+        double sxxmSyy = sxx - syy;
+        double sxy2Sxz2Syx2Szx2 = sxy2 + sxz2 - syx2 - szx2;
+
+        double c0 = sxy2Sxz2Syx2Szx2 * sxy2Sxz2Syx2Szx2;
+        c0 += (sxx2Syy2Szz2Syz2Szy2 + syzSzymSyySzz2) * (sxx2Syy2Szz2Syz2Szy2 - syzSzymSyySzz2);
+        c0 += (-sxzpSzx * syzmSzy + sxymSyx * (sxxmSyy - szz)) * (-sxzmSzx * syzpSzy + sxymSyx * (sxxmSyy + szz));
+        c0 += (-sxzpSzx * syzpSzy - sxypSyx * (sxxpSyy - szz)) * (-sxzmSzx * syzmSzy - sxypSyx * (sxxpSyy + szz));
+        c0 += (sxypSyx * syzpSzy + sxzpSzx * (sxxmSyy + szz)) * (-sxymSyx * syzmSzy + sxzpSzx * (sxxpSyy + szz));
+        c0 += (sxypSyx * syzmSzy + sxzmSzx * (sxxmSyy - szz)) * (-sxymSyx * syzpSzy + sxzmSzx * (sxxpSyy - szz));
+
+        double eigenvalue = e0;
+        for (int i = 0; i < StructureSuperimposer.MAX_ITERATIONS; i++) {
+            double previous = eigenvalue;
+            double x2 = eigenvalue * eigenvalue;
+            double b = (x2 + c2) * eigenvalue;
+            double a = b + c1;
+            double delta = (a * eigenvalue + c0) / (2.0 * x2 * eigenvalue + b + a);
+            eigenvalue -= delta;
+
+            if (Math.abs(eigenvalue - previous) < Math.abs(StructureSuperimposer.EIGENVALUE_PRECISION * eigenvalue)) {
+                break;
+            }
+        }
+        return eigenvalue;
+    }
+
+    /*
+     * The rotation matrix from the eigenvector (a quaternion) of the largest
+     * eigenvalue, taken as a column of the adjoint of (K - eigenvalue * I).
+     */
+    private static double[] rotation(double[] s, double eigenvalue) {
+        double sxx = s[0], sxy = s[1], sxz = s[2];
+        double syx = s[3], syy = s[4], syz = s[5];
+        double szx = s[6], szy = s[7], szz = s[8];
+
+        double a11 = sxx + syy + szz - eigenvalue;
+        double a12 = syz - szy;
+        double a13 = szx - sxz;
+        double a14 = sxy - syx;
+        double a21 = a12;
+        double a22 = sxx - syy - szz - eigenvalue;
+        double a23 = sxy + syx;
+        double a24 = sxz + szx;
+        double a31 = a13;
+        double a32 = a23;
+        double a33 = syy - sxx - szz - eigenvalue;
+        double a34 = syz + szy;
+        double a41 = a14;
+        double a42 = a24;
+        double a43 = a34;
+        double a44 = szz - sxx - syy - eigenvalue;
+
+        double a3344_4334 = a33 * a44 - a43 * a34;
+        double a3244_4234 = a32 * a44 - a42 * a34;
+        double a3243_4233 = a32 * a43 - a42 * a33;
+        double a3143_4133 = a31 * a43 - a41 * a33;
+        double a3144_4134 = a31 * a44 - a41 * a34;
+        double a3142_4132 = a31 * a42 - a41 * a32;
+
+        double q1 = a22 * a3344_4334 - a23 * a3244_4234 + a24 * a3243_4233;
+        double q2 = -a21 * a3344_4334 + a23 * a3144_4134 - a24 * a3143_4133;
+        double q3 = a21 * a3244_4234 - a22 * a3144_4134 + a24 * a3142_4132;
+        double q4 = -a21 * a3243_4233 + a22 * a3143_4133 - a23 * a3142_4132;
+        double qsqr = q1 * q1 + q2 * q2 + q3 * q3 + q4 * q4;
+
+        // if a column is degenerate, try the other ones
+        if (qsqr < StructureSuperimposer.EIGENVECTOR_PRECISION) {
+            q1 = a12 * a3344_4334 - a13 * a3244_4234 + a14 * a3243_4233;
+            q2 = -a11 * a3344_4334 + a13 * a3144_4134 - a14 * a3143_4133;
+            q3 = a11 * a3244_4234 - a12 * a3144_4134 + a14 * a3142_4132;
+            q4 = -a11 * a3243_4233 + a12 * a3143_4133 - a13 * a3142_4132;
+            qsqr = q1 * q1 + q2 * q2 + q3 * q3 + q4 * q4;
+        }
+
+        if (qsqr < StructureSuperimposer.EIGENVECTOR_PRECISION) {
+            double a1324_1423 = a13 * a24 - a14 * a23;
+            double a1224_1422 = a12 * a24 - a14 * a22;
+            double a1223_1322 = a12 * a23 - a13 * a22;
+            double a1124_1421 = a11 * a24 - a14 * a21;
+            double a1123_1321 = a11 * a23 - a13 * a21;
+            double a1122_1221 = a11 * a22 - a12 * a21;
+
+            q1 = a42 * a1324_1423 - a43 * a1224_1422 + a44 * a1223_1322;
+            q2 = -a41 * a1324_1423 + a43 * a1124_1421 - a44 * a1123_1321;
+            q3 = a41 * a1224_1422 - a42 * a1124_1421 + a44 * a1122_1221;
+            q4 = -a41 * a1223_1322 + a42 * a1123_1321 - a43 * a1122_1221;
+            qsqr = q1 * q1 + q2 * q2 + q3 * q3 + q4 * q4;
+
+            if (qsqr < StructureSuperimposer.EIGENVECTOR_PRECISION) {
+                q1 = a32 * a1324_1423 - a33 * a1224_1422 + a34 * a1223_1322;
+                q2 = -a31 * a1324_1423 + a33 * a1124_1421 - a34 * a1123_1321;
+                q3 = a31 * a1224_1422 - a32 * a1124_1421 + a34 * a1122_1221;
+                q4 = -a31 * a1223_1322 + a32 * a1123_1321 - a33 * a1122_1221;
+                qsqr = q1 * q1 + q2 * q2 + q3 * q3 + q4 * q4;
+            }
+        }
+
+        if (qsqr < StructureSuperimposer.EIGENVECTOR_PRECISION) {
+            // the structures are already superposed
+            return new double[] { 1, 0, 0, 0, 1, 0, 0, 0, 1 };
+        }
+
+        double norm = Math.sqrt(qsqr);
+        q1 /= norm;
+        q2 /= norm;
+        q3 /= norm;
+        q4 /= norm;
+
+        double a2 = q1 * q1;
+        double x2 = q2 * q2;
+        double y2 = q3 * q3;
+        double z2 = q4 * q4;
+        double xy = q2 * q3;
+        double az = q1 * q4;
+        double zx = q4 * q2;
+        double ay = q1 * q3;
+        double yz = q3 * q4;
+        double ax = q1 * q2;
+
+        return new double[] { a2 + x2 - y2 - z2, 2 * (xy + az), 2 * (zx - ay), 2 * (xy - az), a2 - x2 + y2 - z2, 2 * (yz + ax), 2 * (zx + ay), 2 * (yz - ax), a2 - x2 - y2 + z2 };
+    }
+
+    private StructureSuperimposer() {
+    }
+}
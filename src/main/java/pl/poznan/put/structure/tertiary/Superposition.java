@@ -0,0 +1,69 @@
+package pl.poznan.put.structure.tertiary;
+
+import pl.poznan.put.pdb.PdbAtomLine;
+
+/**
+ * Result of an optimal superposition of a model onto a target. The model
+ * coordinates are moved by: x' = R * x + t, where R is the rotation matrix and
+ * t is the translation vector.
+ */
+public class Superposition {
+    private final double rmsd;
+    private final double[] rotation;
+    private final double[] translation;
+    private final int atomCount;
+
+    public Superposition(double rmsd, double[] rotation, double[] translation, int atomCount) {
+        super();
+        this.rmsd = rmsd;
+        this.rotation = rotation.clone();
+        this.translation = translation.clone();
+        this.atomCount = atomCount;
+    }
+
+    public double getRmsd() {
+        return rmsd;
+    }
+
+    /**
+     * @return The 3x3 rotation matrix in row-major order.
+     */
+    public double[] getRotation() {
+        return rotation.clone();
+    }
+
+    public double[] getTranslation() {
+        return translation.clone();
+    }
+
+    public int getAtomCount() {
+        return atomCount;
+    }
+
+    /**
+     * Move coordinates of points stored as consecutive x, y, z triples.
+     *
+     * @param coordinates Array of x, y, z values which is modified in place.
+     */
+    public void transform(double[] coordinates) {
+        for (int i = 0; i + 2 < coordinates.length; i += 3) {
+            double x = coordinates[i];
+            double y = coordinates[i + 1];
+            double z = coordinates[i + 2];
+            coordinates[i] = rotation[0] * x + rotation[1] * y + rotation[2] * z + translation[0];
+            coordinates[i + 1] = rotation[3] * x + rotation[4] * y + rotation[5] * z + translation[1];
+            coordinates[i + 2] = rotation[6] * x + rotation[7] * y + rotation[8] * z + translation[2];
+        }
+    }
+
+    public PdbAtomLine transform(PdbAtomLine atom) {
+        double[] xyz = new double[] { atom.getX(), atom.getY(), atom.getZ() };
+        transform(xyz);
+        return new PdbAtomLine(atom.getSerialNumber(), atom.getAtomName(), atom.getAlternateLocation(), atom.getResidueName(), atom.getChainIdentifier(), atom.getResidueNumber(), atom.getInsertionCode(), xyz[0], xyz[1], xyz[2], atom.getOccupancy(), atom.getTemperatureFactor(), atom.getElementSymbol(), atom.getCharge());
+    }
+
+    @Override
+    public String toString() {
+        return "Superposition [rmsd=" + rmsd + ", atomCount=" + atomCount + "]";
+    }
+}
@@ -13,6 +13,12 @@ public abstract class AtomBasedTorsionAngleType extends TorsionAngleType {
     private final String displayName;
     private final Quadruplet<AtomName> atoms;
     private final Quadruplet<Integer> residueRule;
+    /*
+     * The rule compiled for calculate(): residue offset and atom name of each
+     * of the four atoms
+     */
+    private final int[] planOffsets = new int[4];
+    private final AtomName[] planAtoms = new AtomName[4];
 
     public AtomBasedTorsionAngleType(MoleculeType moleculeType,
                                      String displayName, Quadruplet<AtomName> atoms,
@@ -21,6 +27,11 @@ public abstract class AtomBasedTorsionAngleType extends TorsionAngleType {
         this.displayName = displayName;
         this.atoms = atoms;
         this.residueRule = residueRule;
+
+        for (int i = 0; i < 4; i++) {
+            planOffsets[i] = residueRule.get(i);
+            planAtoms[i] = atoms.get(i);
+        }
     }
 
     public Quadruplet<AtomName> getAtoms() {
@@ -95,23 +106,27 @@ public abstract class AtomBasedTorsionAngleType extends TorsionAngleType {
     @Override
     public TorsionAngleValue calculate(List<PdbResidue> residues,
                                        int currentIndex) throws InvalidCircularValueException {
-        PdbAtomLine[] foundAtoms = new PdbAtomLine[4];
-
-        for (int i = 0; i < 4; i++) {
-            int index = currentIndex + residueRule.get(i);
-            if (index < 0 || index >= residues.size()) {
-                return TorsionAngleValue.invalidInstance(this);
-            }
+        PdbAtomLine a1 = findAtom(residues, currentIndex, 0);
+        PdbAtomLine a2 = a1 == null ? null : findAtom(residues, currentIndex, 1);
+        PdbAtomLine a3 = a2 == null ? null : findAtom(residues, currentIndex, 2);
+        PdbAtomLine a4 = a3 == null ? null : findAtom(residues, currentIndex, 3);
 
-            PdbResidue residue = residues.get(index);
-            if (!residue.hasAtom(atoms.get(i))) {
-                return TorsionAngleValue.invalidInstance(this);
-            }
+        if (a4 == null) {
+            return TorsionAngleValue.invalidInstance(this);
+        }
+        return new TorsionAngleValue(this, TorsionAnglesHelper.calculateTorsionAngle(a1, a2, a3, a4));
+    }
 
-            foundAtoms[i] = residue.findAtom(atoms.get(i));
+    private PdbAtomLine findAtom(List<PdbResidue> residues, int currentIndex,
+                                 int i) {
+        int index = currentIndex + planOffsets[i];
+        if (index < 0 || index >= residues.size()) {
+            return null;
         }
 
-        return new TorsionAngleValue(this, TorsionAnglesHelper.calculateTorsionAngle(foundAtoms[0], foundAtoms[1], foundAtoms[2], foundAtoms[3]));
+        PdbResidue residue = residues.get(index);
+        int atomIndex = residue.indexOfAtom(planAtoms[i]);
+        return atomIndex == -1 ? null : residue.getAtom(atomIndex);
     }
 
     public TorsionAngleValue calculate(PdbAtomLine a1, PdbAtomLine a2,
@@ -4,11 +4,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
+import org.apache.commons.math3.util.FastMath;
+
 import pl.poznan.put.circular.Angle;
 import pl.poznan.put.circular.exception.InvalidCircularValueException;
 import pl.poznan.put.circular.samples.AngleSample;
@@ -19,6 +23,11 @@ public class AverageTorsionAngleType extends TorsionAngleType implements MasterT
     private final String displayName;
     private final String exportName;
     private final List<MasterTorsionAngleType> consideredAngles;
+    /*
+     * For every angle type covered by consideredAngles: indices of all
+     * master types containing it.
+     */
+    private final Map<TorsionAngleType, int[]> angleTypeToSlots;
 
     public AverageTorsionAngleType(MoleculeType moleculeType,
             MasterTorsionAngleType... masterTypes) {
@@ -26,6 +35,7 @@ public class AverageTorsionAngleType extends TorsionAngleType implements MasterT
         this.consideredAngles = Arrays.asList(masterTypes);
         this.displayName = AverageTorsionAngleType.toDisplayName(consideredAngles);
         this.exportName = AverageTorsionAngleType.toExportName(consideredAngles);
+        this.angleTypeToSlots = AverageTorsionAngleType.toSlotMapping(consideredAngles);
     }
 
     public AverageTorsionAngleType(MoleculeType moleculeType,
@@ -34,6 +44,7 @@ public class AverageTorsionAngleType extends TorsionAngleType implements MasterT
         this.consideredAngles = consideredAngles;
         this.displayName = AverageTorsionAngleType.toDisplayName(consideredAngles);
         this.exportName = AverageTorsionAngleType.toExportName(consideredAngles);
+        this.angleTypeToSlots = AverageTorsionAngleType.toSlotMapping(consideredAngles);
     }
 
     private static String toDisplayName(
@@ -82,6 +93,27 @@ public class AverageTorsionAngleType extends TorsionAngleType implements MasterT
         this.consideredAngles = consideredAngles;
         this.displayName = displayName;
         this.exportName = exportName;
+        this.angleTypeToSlots = AverageTorsionAngleType.toSlotMapping(consideredAngles);
+    }
+
+    private static Map<TorsionAngleType, int[]> toSlotMapping(
+            List<MasterTorsionAngleType> consideredAngles) {
+        Map<TorsionAngleType, int[]> mapping = new HashMap<TorsionAngleType, int[]>();
+
+        for (int i = 0; i < consideredAngles.size(); i++) {
+            for (TorsionAngleType type : consideredAngles.get(i).getAngleTypes()) {
+                int[] slots = mapping.get(type);
+                if (slots == null) {
+                    mapping.put(type, new int[] { i });
+                } else if (slots[slots.length - 1] != i) {
+                    slots = Arrays.copyOf(slots, slots.length + 1);
+                    slots[slots.length - 1] = i;
+                    mapping.put(type, slots);
+                }
+            }
+        }
+
+        return mapping;
     }
 
     @Override
@@ -108,16 +140,61 @@ public class AverageTorsionAngleType extends TorsionAngleType implements MasterT
         return Collections.unmodifiableList(consideredAngles);
     }
 
+    /*
+     * The mean direction is computed from running sums of sines and cosines,
+     * without collecting the angles. Samples which are empty or contain an
+     * invalid angle are passed to AngleSample to keep its semantics for them.
+     */
     @Override
     public TorsionAngleValue calculate(List<PdbResidue> residues,
             int currentIndex) throws InvalidCircularValueException {
+        return calculate(residues, currentIndex, Collections.<TorsionAngleType, TorsionAngleValue> emptyMap());
+    }
+
+    @Override
+    public TorsionAngleValue calculate(List<PdbResidue> residues,
+            int currentIndex,
+            Map<TorsionAngleType, TorsionAngleValue> knownValues) throws InvalidCircularValueException {
+        PdbResidue residue = residues.get(currentIndex);
+        List<TorsionAngleType> residueTypes = residue.getTorsionAngleTypes();
+        double sinSum = 0.0;
+        double cosSum = 0.0;
+        int count = 0;
+
+        for (int i = 0; i < residueTypes.size(); i++) {
+            TorsionAngleType type = residueTypes.get(i);
+            int[] slots = angleTypeToSlots.get(type);
+            if (slots == null) {
+                continue;
+            }
+
+            Angle angle = TorsionAngleType.knownOrCalculate(type, residues, currentIndex, knownValues).getValue();
+            if (!angle.isValid()) {
+                return calculateWithSample(residues, currentIndex, knownValues);
+            }
+
+            double radians = angle.getRadians();
+            sinSum += slots.length * FastMath.sin(radians);
+            cosSum += slots.length * FastMath.cos(radians);
+            count += slots.length;
+        }
+
+        if (count == 0) {
+            return calculateWithSample(residues, currentIndex, knownValues);
+        }
+        return new TorsionAngleValue(this, new Angle(FastMath.atan2(sinSum, cosSum)));
+    }
+
+    private TorsionAngleValue calculateWithSample(List<PdbResidue> residues,
+            int currentIndex,
+            Map<TorsionAngleType, TorsionAngleValue> knownValues) throws InvalidCircularValueException {
         PdbResidue residue = residues.get(currentIndex);
         List<Angle> angles = new ArrayList<Angle>();
 
         for (TorsionAngleType type : residue.getTorsionAngleTypes()) {
             for (MasterTorsionAngleType masterType : consideredAngles) {
                 if (masterType.getAngleTypes().contains(type)) {
-                    TorsionAngleValue angleValue = type.calculate(residues, currentIndex);
+                    TorsionAngleValue angleValue = TorsionAngleType.knownOrCalculate(type, residues, currentIndex, knownValues);
                     angles.add(angleValue.getValue());
                 }
             }
@@ -128,6 +205,46 @@ public class AverageTorsionAngleType extends TorsionAngleType implements MasterT
     }
 
     public TorsionAngleValue calculate(Collection<TorsionAngleValue> values) {
+        int masterCount = consideredAngles.size();
+        if (masterCount > 64) {
+            return calculateWithSample(values);
+        }
+
+        /* bit i is set once the first value of i-th master type was seen */
+        long seen = 0L;
+        double sinSum = 0.0;
+        double cosSum = 0.0;
+        int count = 0;
+
+        for (TorsionAngleValue angleValue : values) {
+            int[] slots = angleTypeToSlots.get(angleValue.getAngleType());
+            if (slots == null) {
+                continue;
+            }
+
+            for (int slot : slots) {
+                if ((seen & (1L << slot)) != 0) {
+                    continue;
+                }
+
+                seen |= 1L << slot;
+                if (angleValue.isValid()) {
+                    double radians = angleValue.getValue().getRadians();
+                    sinSum += FastMath.sin(radians);
+                    cosSum += FastMath.cos(radians);
+                    count += 1;
+                }
+            }
+        }
+
+        if (count == 0) {
+            return calculateWithSample(values);
+        }
+        return new TorsionAngleValue(this, new Angle(FastMath.atan2(sinSum, cosSum)));
+    }
+
+    private TorsionAngleValue calculateWithSample(
+            Collection<TorsionAngleValue> values) {
         List<Angle> angles = new ArrayList<Angle>();
 
         for (MasterTorsionAngleType masterType : consideredAngles) {
@@ -0,0 +1,251 @@
+package pl.poznan.put.torsion;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pl.poznan.put.pdb.analysis.PdbResidue;
+import pl.poznan.put.pdb.analysis.ResidueCollection;
+
+/**
+ * All-vs-all MCQ (mean of circular quantities) distances between structures
+ * with the same number of residues.
+ *
+ * Torsion angles of every structure are calculated once and kept as cosines
+ * and sines. For two angles a and b, cos(a - b) and |sin(a - b)| are the cosine
+ * and sine of their circular difference, so comparing two structures needs no
+ * trigonometric calls except the final atan2. Only angles valid in both
+ * structures are taken into account. The matrix is filled in square tiles on a
+ * pool of threads.
+ */
+public class MCQMatrix {
+    private static final int TILE_SIZE = 64;
+
+    private final MasterTorsionAngleType[] angleTypes;
+    private final int threadCount;
+
+    public MCQMatrix(MasterTorsionAngleType[] angleTypes) {
+        this(angleTypes, Runtime.getRuntime().availableProcessors());
+    }
+
+    public MCQMatrix(MasterTorsionAngleType[] angleTypes, int threadCount) {
+        super();
+        this.angleTypes = angleTypes.clone();
+        this.threadCount = threadCount;
+    }
+
+    /**
+     * Calculate torsion angles of all residues.
+     *
+     * @param residueCollection A structure.
+     * @return Array with cosine and sine of each angle (residue-major order,
+     *         NaN for invalid angles).
+     */
+    public double[] torsionVector(ResidueCollection residueCollection) {
+        List<PdbResidue> residues = residueCollection.getResidues();
+        double[] vector = new double[2 * residues.size() * angleTypes.length];
+        int index = 0;
+
+        for (int i = 0; i < residues.size(); i++) {
+            PdbResidue residue = residues.get(i);
+
+            for (MasterTorsionAngleType masterType : angleTypes) {
+                double radians = Double.NaN;
+
+                for (TorsionAngleType type : residue.getTorsionAngleTypes()) {
+                    if (masterType.getAngleTypes().contains(type)) {
+                        radians = type.calculate(residues, i).getValue().getRadians();
+                        break;
+                    }
+                }
+
+                vector[index] = Math.cos(radians);
+                vector[index + 1] = Math.sin(radians);
+                index += 2;
+            }
+        }
+
+        return vector;
+    }
+
+    /**
+     * @return MCQ in radians between two torsion vectors or NaN if no angle is
+     *         valid in both.
+     */
+    public static double distance(double[] left, double[] right) {
+        if (left.length != right.length) {
+            throw new IllegalArgumentException("Cannot compare torsion vectors of different length: " + left.length + " vs " + right.length);
+        }
+
+        double sumSin = 0;
+        double sumCos = 0;
+        int count = 0;
+
+        for (int i = 0; i < left.length; i += 2) {
+            double cos = left[i] * right[i] + left[i + 1] * right[i + 1];
+            if (Double.isNaN(cos)) {
+                continue;
+            }
+            double sin = left[i + 1] * right[i] - left[i] * right[i + 1];
+            sumCos += cos;
+            sumSin += Math.abs(sin);
+            count += 1;
+        }
+
+        return count == 0 ? Double.NaN : Math.atan2(sumSin, sumCos);
+    }
+
+    public double[][] compute(List<? extends ResidueCollection> structures) throws InterruptedException {
+        final double[][] matrix = new double[structures.size()][structures.size()];
+
+        try {
+            compute(structures, new TileHandler() {
+                @Override
+                public void handle(int rowFrom, int rowTo, int columnFrom, int columnTo, double[][] tile) {
+                    for (int i = rowFrom; i < rowTo; i++) {
+                        for (int j = columnFrom; j < columnTo; j++) {
+                            matrix[i][j] = tile[i - rowFrom][j - columnFrom];
+                            matrix[j][i] = matrix[i][j];
+                        }
+                    }
+                }
+            });
+        } catch (IOException e) {
+            // the handler above does no I/O
+            throw new IllegalStateException(e);
+        }
+
+        return matrix;
+    }
+
+    /**
+     * Compute the matrix without keeping it in memory. Every finished tile is
+     * written to the file, which holds N * N big-endian doubles in row-major
+     * order (as read by {@link java.io.DataInputStream#readDouble()}).
+     *
+     * @param structures Structures to compare.
+     * @param file Output file, overwritten if it exists.
+     */
+    public void compute(List<? extends ResidueCollection> structures, File file) throws InterruptedException, IOException {
+        final int size = structures.size();
+        final RandomAccessFile output = new RandomAccessFile(file, "rw");
+
+        try {
+            output.setLength(0);
+            output.setLength(8L * size * size);
+
+            compute(structures, new TileHandler() {
+                @Override
+                public void handle(int rowFrom, int rowTo, int columnFrom, int columnTo, double[][] tile) throws IOException {
+                    ByteBuffer buffer = ByteBuffer.allocate(8 * Math.max(rowTo - rowFrom, columnTo - columnFrom));
+
+                    synchronized (output) {
+                        for (int i = rowFrom; i < rowTo; i++) {
+                            buffer.clear();
+                            for (int j = columnFrom; j < columnTo; j++) {
+                                buffer.putDouble(tile[i - rowFrom][j - columnFrom]);
+                            }
+                            output.seek(8L * ((long) i * size + columnFrom));
+                            output.write(buffer.array(), 0, buffer.position());
+                        }
+
+                        for (int j = columnFrom; j < columnTo; j++) {
+                            buffer.clear();
+                            for (int i = rowFrom; i < rowTo; i++) {
+                                buffer.putDouble(tile[i - rowFrom][j - columnFrom]);
+                            }
+                            output.seek(8L * ((long) j * size + rowFrom));
+                            output.write(buffer.array(), 0, buffer.position());
+                        }
+                    }
+                }
+            });
+        } finally {
+            output.close();
+        }
+    }
+
+    private void compute(final List<? extends ResidueCollection> structures, final TileHandler handler) throws InterruptedException, IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+        try {
+            List<Future<double[]>> vectorFutures = new ArrayList<Future<double[]>>();
+            for (final ResidueCollection structure : structures) {
+                vectorFutures.add(executor.submit(new Callable<double[]>() {
+                    @Override
+                    public double[] call() {
+                        return torsionVector(structure);
+                    }
+                }));
+            }
+
+            final double[][] vectors = new double[structures.size()][];
+            for (int i = 0; i < vectors.length; i++) {
+                vectors[i] = MCQMatrix.getResult(vectorFutures.get(i));
+            }
+
+            List<Future<Object>> tileFutures = new ArrayList<Future<Object>>();
+            for (int rowFrom = 0; rowFrom < vectors.length; rowFrom += MCQMatrix.TILE_SIZE) {
+                for (int columnFrom = rowFrom; columnFrom < vectors.length; columnFrom += MCQMatrix.TILE_SIZE) {
+                    final int i0 = rowFrom;
+                    final int j0 = columnFrom;
+                    final int i1 = Math.min(rowFrom + MCQMatrix.TILE_SIZE, vectors.length);
+                    final int j1 = Math.min(columnFrom + MCQMatrix.TILE_SIZE, vectors.length);
+
+                    tileFutures.add(executor.submit(new Callable<Object>() {
+                        @Override
+                        public Object call() throws IOException {
+                            double[][] tile = new double[i1 - i0][j1 - j0];
+                            for (int i = i0; i < i1; i++) {
+                                for (int j = Math.max(j0, i + 1); j < j1; j++) {
+                                    tile[i - i0][j - j0] = MCQMatrix.distance(vectors[i], vectors[j]);
+                                }
+                            }
+                            // on diagonal tiles, the lower part is copied from the upper
+                            for (int i = i0; i < i1; i++) {
+                                for (int j = j0; j <= i && j < j1; j++) {
+                                    tile[i - i0][j - j0] = j == i ? 0 : tile[j - i0][i - j0];
+                                }
+                            }
+                            handler.handle(i0, i1, j0, j1, tile);
+                            return null;
+                        }
+                    }));
+                }
+            }
+
+            for (Future<Object> future : tileFutures) {
+                MCQMatrix.getResult(future);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> T getResult(Future<T> future) throws InterruptedException, IOException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IllegalStateException("Failed to compute MCQ matrix", cause);
+        }
+    }
+
+    private interface TileHandler {
+        void handle(int rowFrom, int rowTo, int columnFrom, int columnTo, double[][] tile) throws IOException;
+    }
+}
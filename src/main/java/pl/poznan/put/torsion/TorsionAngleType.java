@@ -1,6 +1,7 @@
 package pl.poznan.put.torsion;
 
 import java.util.List;
+import java.util.Map;
 
 import pl.poznan.put.interfaces.DisplayableExportable;
 import pl.poznan.put.pdb.analysis.MoleculeType;
@@ -70,4 +71,25 @@ public abstract class TorsionAngleType implements DisplayableExportable {
 
     public abstract TorsionAngleValue calculate(List<PdbResidue> residues,
             int currentIndex);
-}
\ No newline at end of file
+
+    /*
+     * Calculate the value for a residue whose other torsion angles are
+     * already known. Angle types derived from other ones (e.g. pucker) reuse
+     * the values from the map instead of computing dihedrals once again.
+     */
+    public TorsionAngleValue calculate(List<PdbResidue> residues,
+            int currentIndex,
+            Map<TorsionAngleType, TorsionAngleValue> knownValues) {
+        return calculate(residues, currentIndex);
+    }
+
+    /*
+     * Value from the map or calculated if the map does not have it
+     */
+    protected static TorsionAngleValue knownOrCalculate(TorsionAngleType type,
+            List<PdbResidue> residues, int currentIndex,
+            Map<TorsionAngleType, TorsionAngleValue> knownValues) {
+        TorsionAngleValue value = knownValues.get(type);
+        return value != null ? value : type.calculate(residues, currentIndex, knownValues);
+    }
+}
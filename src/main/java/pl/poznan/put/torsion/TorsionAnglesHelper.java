@@ -2,6 +2,7 @@ package pl.poznan.put.torsion;
 
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 import org.apache.commons.math3.util.FastMath;
+import org.apache.commons.math3.util.MathArrays;
 
 import pl.poznan.put.circular.Angle;
 import pl.poznan.put.circular.exception.InvalidCircularValueException;
@@ -102,14 +103,43 @@ public final class TorsionAnglesHelper {
             return Angle.invalidInstance();
         }
 
-        Vector3D v1 = TorsionAnglesHelper.atomDistance(a1, a2);
-        Vector3D v2 = TorsionAnglesHelper.atomDistance(a2, a3);
-        Vector3D v3 = TorsionAnglesHelper.atomDistance(a3, a4);
+        double value = TorsionAnglesHelper.calculateTorsionAtan(a1.getX(), a1.getY(), a1.getZ(), a2.getX(), a2.getY(), a2.getZ(), a3.getX(), a3.getY(), a3.getZ(), a4.getX(), a4.getY(), a4.getZ());
+        return new Angle(value);
+    }
+
+    /*
+     * The same arithmetic as with Vector3D (crossProduct, getNorm,
+     * dotProduct), but on primitives to avoid allocating seven vectors. The
+     * result is in radians.
+     */
+    public static double calculateTorsionAtan(double x1, double y1, double z1,
+            double x2, double y2, double z2, double x3, double y3, double z3,
+            double x4, double y4, double z4) {
+        double v1x = x2 - x1;
+        double v1y = y2 - y1;
+        double v1z = z2 - z1;
+        double v2x = x3 - x2;
+        double v2y = y3 - y2;
+        double v2z = z3 - z2;
+        double v3x = x4 - x3;
+        double v3y = y4 - y3;
+        double v3z = z4 - z3;
+
+        double tmp1x = MathArrays.linearCombination(v1y, v2z, -v1z, v2y);
+        double tmp1y = MathArrays.linearCombination(v1z, v2x, -v1x, v2z);
+        double tmp1z = MathArrays.linearCombination(v1x, v2y, -v1y, v2x);
+        double tmp2x = MathArrays.linearCombination(v2y, v3z, -v2z, v3y);
+        double tmp2y = MathArrays.linearCombination(v2z, v3x, -v2x, v3z);
+        double tmp2z = MathArrays.linearCombination(v2x, v3y, -v2y, v3x);
+
+        double norm = FastMath.sqrt(v2x * v2x + v2y * v2y + v2z * v2z);
+        double tmp3x = norm * v1x;
+        double tmp3y = norm * v1y;
+        double tmp3z = norm * v1z;
 
-        Vector3D tmp1 = v1.crossProduct(v2);
-        Vector3D tmp2 = v2.crossProduct(v3);
-        Vector3D tmp3 = v1.scalarMultiply(v2.getNorm());
-        return new Angle(FastMath.atan2(tmp3.dotProduct(tmp2), tmp1.dotProduct(tmp2)));
+        double y = MathArrays.linearCombination(tmp3x, tmp2x, tmp3y, tmp2y, tmp3z, tmp2z);
+        double x = MathArrays.linearCombination(tmp1x, tmp2x, tmp1y, tmp2y, tmp1z, tmp2z);
+        return FastMath.atan2(y, x);
     }
 
     public static double subtractTorsions(double a1, double a2) {
@@ -126,6 +126,22 @@ public class TestBpSeq {
         BpSeq.fromDotBracket(db);
     }
 
+    @SuppressWarnings("static-method")
+    @Test
+    public void fromPairs() throws InvalidSecondaryStructureException {
+        BpSeq fromPairs = new BpSeq("ACGU".toCharArray(), new int[] { 0, 3, 2, 0 });
+        BpSeq fromString = BpSeq.fromString(INPUT_GOOD_1);
+        assertEquals(fromString, fromPairs);
+        assertEquals(fromString.getEntries(), fromPairs.getEntries());
+        assertEquals(fromString, BpSeq.fromCt(Ct.fromBpSeq(fromPairs)));
+    }
+
+    @SuppressWarnings("static-method")
+    @Test(expected = InvalidSecondaryStructureException.class)
+    public void fromPairsInconsistent() throws InvalidSecondaryStructureException {
+        new BpSeq("ACGU".toCharArray(), new int[] { 0, 3, 4, 0 });
+    }
+
     @Test
     public void testManyChainsWithMissingResidues() throws PdbParsingException, InvalidSecondaryStructureException {
         PdbParser parser = new PdbParser();
@@ -1,7 +1,14 @@
 package pl.poznan.put;
 
+import static org.junit.Assert.assertEquals;
+
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.URI;
 import java.net.URISyntaxException;
 
@@ -167,6 +174,66 @@ public class TestCt {
         Ct.fromString(data);
     }
 
+    @Test
+    public void testRnaStrandFromReader() throws InvalidSecondaryStructureException, URISyntaxException, IOException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        File ctFile = new File(dir, "../../src/test/resources/CRW_00528.ct");
+        Reader reader = null;
+
+        try {
+            reader = new InputStreamReader(new FileInputStream(ctFile), "utf-8");
+            TestCt.assertRnaStrandContent(Ct.fromReader(reader));
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    @Test
+    public void testReaderWithShortReads() throws InvalidSecondaryStructureException, URISyntaxException, IOException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        String data = FileUtils.readFileToString(new File(dir, "../../src/test/resources/CRW_00528.ct"), "utf-8");
+
+        // every line is split between several reads
+        TestCt.assertRnaStrandContent(Ct.fromReader(new ShortReader(data)));
+
+        Ct ct = Ct.fromReader(new ShortReader(TestCt.inputGood));
+        assertEquals(4, ct.size());
+        assertEquals('U', ct.getSeq(3));
+        assertEquals(1, ct.getPair(3));
+        assertEquals(12315, ct.getOriginal(4));
+    }
+
+    /*
+     * The header says 4377, but the file has 4381 entries after three comment
+     * lines
+     */
+    private static void assertRnaStrandContent(Ct ct) {
+        assertEquals(4381, ct.size());
+        assertEquals('U', ct.getSeq(1));
+        assertEquals(0, ct.getPair(1));
+        assertEquals(3643, ct.getPair(529));
+        assertEquals(529, ct.getPair(3643));
+        assertEquals('A', ct.getSeq(531));
+        assertEquals(3641, ct.getPair(531));
+        assertEquals(4281, ct.getPair(4379));
+        assertEquals(4378, ct.getBefore(4379));
+        assertEquals(4379, ct.getOriginal(4379));
+        assertEquals(0, ct.getPair(4381));
+    }
+
+    private static final class ShortReader extends FilterReader {
+        private ShortReader(String data) {
+            super(new StringReader(data));
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 3));
+        }
+    }
+
     @Test
     public void testX3Dna() throws InvalidSecondaryStructureException, URISyntaxException, IOException {
         URI uri = getClass().getClassLoader().getResource(".").toURI();
@@ -6,6 +6,7 @@ import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.List;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Before;
@@ -14,6 +15,7 @@ import org.junit.Test;
 import pl.poznan.put.structure.secondary.formats.BpSeq;
 import pl.poznan.put.structure.secondary.formats.DotBracket;
 import pl.poznan.put.structure.secondary.formats.InvalidSecondaryStructureException;
+import pl.poznan.put.structure.secondary.formats.Strand;
 
 public class TestDotBracket {
     // @formatter:off
@@ -78,4 +80,54 @@ public class TestDotBracket {
         DotBracket dotBracketFromString = DotBracket.fromString(dotBracket1EHZ);
         assertEquals(dotBracketFromString, dotBracketFromBpSeq);
     }
+
+    @SuppressWarnings("static-method")
+    @Test(expected = InvalidSecondaryStructureException.class)
+    public void fromBpSeqTooManyOrders() throws InvalidSecondaryStructureException {
+        // 31 pairs crossing each other require 31 different bracket types
+        int size = 62;
+        char[] sequence = new char[size];
+        int[] pairs = new int[size];
+
+        for (int i = 0; i < size / 2; i++) {
+            sequence[i] = 'G';
+            sequence[i + size / 2] = 'C';
+            pairs[i] = i + size / 2 + 1;
+            pairs[i + size / 2] = i + 1;
+        }
+
+        DotBracket.fromBpSeq(new BpSeq(sequence, pairs));
+    }
+
+    @SuppressWarnings("static-method")
+    @Test(expected = InvalidSecondaryStructureException.class)
+    public void fromStringLengthMismatch() throws InvalidSecondaryStructureException {
+        DotBracket.fromString(">strand_A\nGGGAAACC\n(((...)))\n");
+    }
+
+    @SuppressWarnings("static-method")
+    @Test
+    public void fromStringManyStrands() throws InvalidSecondaryStructureException {
+        DotBracket dotBracket = DotBracket.fromString(">strand_A\nGGGA\n(((.\n>strand_B\nAA\n..\n>C\nUCCC\n.)))\n");
+        assertEquals("GGGAAAUCCC", dotBracket.getSequence());
+        assertEquals("(((....)))", dotBracket.getStructure());
+
+        List<Strand> strands = dotBracket.getStrands();
+        assertEquals(3, strands.size());
+        assertEquals("A", strands.get(0).getName());
+        assertEquals("B", strands.get(1).getName());
+        assertEquals("C", strands.get(2).getName());
+        assertEquals("AA", strands.get(1).getSequence());
+        assertEquals(".)))", strands.get(2).getStructure());
+    }
+
+    @SuppressWarnings("static-method")
+    @Test
+    public void fromStringTrailingBlankLines() throws InvalidSecondaryStructureException {
+        DotBracket expected = DotBracket.fromString(">strand_A\nGGGAAACCC\n(((...)))");
+        DotBracket dotBracket = DotBracket.fromString(">strand_A\nGGGAAACCC\n(((...)))\n\n  \n\n");
+        assertEquals(expected, dotBracket);
+        assertEquals(1, dotBracket.getStrands().size());
+        assertEquals(9, dotBracket.getStrands().get(0).getLength());
+    }
 }
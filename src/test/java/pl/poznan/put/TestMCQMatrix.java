@@ -0,0 +1,104 @@
+package pl.poznan.put;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PdbCompactFragment;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.pdb.analysis.PdbResidue;
+import pl.poznan.put.rna.torsion.RNATorsionAngleType;
+import pl.poznan.put.torsion.MCQMatrix;
+import pl.poznan.put.torsion.MasterTorsionAngleType;
+import pl.poznan.put.torsion.TorsionAngleValue;
+import pl.poznan.put.torsion.TorsionAnglesHelper;
+
+public class TestMCQMatrix {
+    private List<PdbCompactFragment> fragments;
+
+    @Before
+    public void loadPdbFile() throws URISyntaxException, IOException, PdbParsingException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        String pdb1EHZ = FileUtils.readFileToString(new File(dir, "../../src/test/resources/1EHZ.pdb"), "utf-8");
+
+        PdbModel model = new PdbParser().parse(pdb1EHZ).get(0);
+        PdbCompactFragment whole = new PdbCompactFragment("1EHZ", model.getResidues());
+        fragments = new ArrayList<PdbCompactFragment>();
+        for (int i = 0; i < 5; i++) {
+            fragments.add(whole.shift(10 * i, 30));
+        }
+    }
+
+    @Test
+    public void testMatrix() throws InterruptedException {
+        MasterTorsionAngleType[] angleTypes = RNATorsionAngleType.mainAngles();
+        double[][] matrix = new MCQMatrix(angleTypes, 2).compute(fragments);
+
+        for (int i = 0; i < fragments.size(); i++) {
+            assertEquals(0, matrix[i][i], 1.0e-9);
+            for (int j = 0; j < fragments.size(); j++) {
+                assertEquals(matrix[i][j], matrix[j][i], 0);
+                assertEquals(TestMCQMatrix.naiveMcq(fragments.get(i), fragments.get(j), angleTypes), matrix[i][j], 1.0e-9);
+            }
+        }
+    }
+
+    @Test
+    public void testMatrixFile() throws InterruptedException, IOException {
+        MCQMatrix mcqMatrix = new MCQMatrix(RNATorsionAngleType.mainAngles(), 2);
+        double[][] matrix = mcqMatrix.compute(fragments);
+
+        File file = File.createTempFile("mcq", ".bin");
+        DataInputStream stream = null;
+        try {
+            mcqMatrix.compute(fragments, file);
+            stream = new DataInputStream(new FileInputStream(file));
+            for (int i = 0; i < fragments.size(); i++) {
+                for (int j = 0; j < fragments.size(); j++) {
+                    assertEquals(matrix[i][j], stream.readDouble(), 0);
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(stream);
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    private static double naiveMcq(PdbCompactFragment left, PdbCompactFragment right, MasterTorsionAngleType[] angleTypes) {
+        double sumSin = 0;
+        double sumCos = 0;
+
+        for (int i = 0; i < left.size(); i++) {
+            PdbResidue leftResidue = left.getResidues().get(i);
+            PdbResidue rightResidue = right.getResidues().get(i);
+
+            for (MasterTorsionAngleType angleType : angleTypes) {
+                TorsionAngleValue leftValue = left.getTorsionAngleValue(leftResidue, angleType);
+                TorsionAngleValue rightValue = right.getTorsionAngleValue(rightResidue, angleType);
+                double delta = TorsionAnglesHelper.subtractTorsions(leftValue.getValue().getRadians(), rightValue.getValue().getRadians());
+
+                if (!Double.isNaN(delta)) {
+                    sumSin += Math.sin(delta);
+                    sumCos += Math.cos(delta);
+                }
+            }
+        }
+
+        return Math.atan2(sumSin, sumCos);
+    }
+}
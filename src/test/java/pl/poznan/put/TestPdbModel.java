@@ -1,11 +1,15 @@
 package pl.poznan.put;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.StringWriter;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -22,10 +26,16 @@ import pl.poznan.put.pdb.PdbAtomLine;
 import pl.poznan.put.pdb.PdbParsingException;
 import pl.poznan.put.pdb.PdbResidueIdentifier;
 import pl.poznan.put.pdb.analysis.MoleculeType;
+import pl.poznan.put.pdb.analysis.ParseOptions;
+import pl.poznan.put.pdb.analysis.ParseOptions.AlternateLocationPolicy;
+import pl.poznan.put.pdb.analysis.ParseReport;
+import pl.poznan.put.pdb.analysis.ParseReport.RecordType;
 import pl.poznan.put.pdb.analysis.PdbChain;
 import pl.poznan.put.pdb.analysis.PdbModel;
 import pl.poznan.put.pdb.analysis.PdbParser;
 import pl.poznan.put.pdb.analysis.PdbResidue;
+import pl.poznan.put.pdb.analysis.PdbWriter;
+import pl.poznan.put.pdb.analysis.ResidueCollectionView;
 import pl.poznan.put.structure.secondary.CanonicalStructureExtractor;
 import pl.poznan.put.structure.secondary.formats.BpSeq;
 import pl.poznan.put.structure.secondary.formats.InvalidSecondaryStructureException;
@@ -69,6 +79,37 @@ public class TestPdbModel {
         assertEquals(1, models.size());
     }
 
+    @Test
+    public void testContentEquals() throws PdbParsingException {
+        PdbParser parser = new PdbParser();
+        PdbModel first = parser.parse(pdb1EHZ).get(0);
+        PdbModel second = parser.parse(pdb1EHZ).get(0);
+        PdbResidue residueFirst = first.getResidues().get(0);
+        PdbResidue residueSecond = second.getResidues().get(0);
+
+        assertFalse(residueFirst.equals(residueSecond));
+        assertEquals(residueFirst.hashCode(), residueSecond.hashCode());
+        assertTrue(residueFirst.contentEquals(residueSecond));
+        assertTrue(first.getChains().get(0).contentEquals(second.getChains().get(0)));
+        assertTrue(first.contentEquals(second));
+        assertFalse(first.contentEquals(parser.parse(pdb2Z74).get(0)));
+    }
+
+    @Test
+    public void testPdbWriter() throws PdbParsingException, IOException {
+        PdbParser parser = new PdbParser();
+        PdbModel model = parser.parse(pdb1EHZ).get(0);
+
+        StringWriter writer = new StringWriter();
+        PdbWriter pdbWriter = new PdbWriter(writer);
+        pdbWriter.write(model);
+        assertEquals(model.toPdbString(), writer.toString());
+
+        String[] lines = StringUtils.split(writer.toString(), '\n');
+        assertEquals("ATOM      1  OP3   G A   1      50.193  51.190  50.534  1.00 99.85           O  ", lines[0]);
+        assertEquals("ATOM      2  P     G A   1      50.626  49.730  50.573  1.00100.19           P  ", lines[1]);
+    }
+
     @Test
     public void testResidueAnalysis() throws PdbParsingException {
         PdbParser parser = new PdbParser();
@@ -292,6 +333,156 @@ public class TestPdbModel {
         assertEquals(1186, atoms.size());
     }
 
+    @Test
+    public void testParseReport() throws PdbParsingException {
+        ParseReport report = new ParseReport(5);
+        List<PdbModel> models = new PdbParser(true).parse(pdbAmber, report);
+        assertEquals(0, models.size());
+        assertEquals(1557, report.getErrorCount());
+        assertEquals(1557, report.getErrorCount(RecordType.ATOM));
+        assertEquals(0, report.getErrorCount(RecordType.HEADER));
+        assertEquals(Integer.valueOf(1557), report.getErrorCounts(RecordType.ATOM).get("PDB ATOM line is too short"));
+        assertEquals(5, report.getSampleLines().size());
+
+        report = new ParseReport();
+        new PdbParser().parse(pdb1EHZ, report);
+        assertFalse(report.hasErrors());
+        assertEquals(0, report.getSampleLines().size());
+    }
+
+    @Test
+    public void testParseOptions() throws PdbParsingException {
+        ParseOptions options = new ParseOptions();
+        options.setIncludeHydrogens(false);
+        List<PdbModel> full = new PdbParser(false).parse(pdb2MIY);
+        List<PdbModel> filtered = new PdbParser(false, options).parse(pdb2MIY);
+        assertEquals(full.size(), filtered.size());
+
+        for (int i = 0; i < full.size(); i++) {
+            int heavyAtomCount = 0;
+            for (PdbAtomLine atom : full.get(i).getAtoms()) {
+                if (!"H".equals(atom.getElementSymbol())) {
+                    heavyAtomCount += 1;
+                }
+            }
+            assertEquals(heavyAtomCount, filtered.get(i).getAtoms().size());
+        }
+
+        options = new ParseOptions();
+        options.setIncludeHetatms(false);
+        options.setChainIdentifiers(Arrays.asList('A'));
+        PdbModel model = new PdbParser(false, options).parse(pdb1EHZ).get(0);
+        assertEquals(StringUtils.countMatches(pdb1EHZ, "\nATOM  "), model.getAtoms().size());
+
+        options = new ParseOptions();
+        options.setMoleculeTypes(Arrays.asList(MoleculeType.PROTEIN));
+        model = new PdbParser(false, options).parse(pdb4A04).get(0);
+        PdbModel expected = new PdbParser(false).parse(pdb4A04).get(0).filteredNewInstance(MoleculeType.PROTEIN);
+        assertTrue(expected.contentEquals(model));
+    }
+
+    @Test
+    public void testAlternateLocations() throws PdbParsingException {
+        StringBuilder builder = new StringBuilder();
+        builder.append(new PdbAtomLine(1, "N", ' ', "SER", 'A', 1, ' ', 0, 0, 0, 1.0, 0, "N", "")).append('\n');
+        builder.append(new PdbAtomLine(2, "CA", 'A', "SER", 'A', 1, ' ', 1, 0, 0, 0.6, 0, "C", "")).append('\n');
+        builder.append(new PdbAtomLine(3, "CB", 'A', "SER", 'A', 1, ' ', 2, 0, 0, 0.3, 0, "C", "")).append('\n');
+        builder.append(new PdbAtomLine(4, "CA", 'B', "SER", 'A', 1, ' ', 1, 1, 0, 0.4, 0, "C", "")).append('\n');
+        builder.append(new PdbAtomLine(5, "CB", 'B', "SER", 'A', 1, ' ', 2, 1, 0, 0.7, 0, "C", "")).append('\n');
+        builder.append(new PdbAtomLine(6, "CA", 'B', "GLY", 'A', 2, ' ', 3, 1, 0, 1.0, 0, "C", "")).append('\n');
+        String pdb = builder.toString();
+
+        assertEquals(6, new PdbParser(false).parse(pdb).get(0).getAtoms().size());
+
+        ParseOptions options = new ParseOptions();
+        options.setAlternateLocationPolicy(AlternateLocationPolicy.FIRST);
+        List<PdbAtomLine> atoms = new PdbParser(false, options).parse(pdb).get(0).getAtoms();
+        assertEquals(Arrays.asList(1, 2, 3, 6), TestPdbModel.serialNumbers(atoms));
+
+        // B has higher mean occupancy, although its CA has lower one
+        options.setAlternateLocationPolicy(AlternateLocationPolicy.HIGHEST_OCCUPANCY);
+        atoms = new PdbParser(false, options).parse(pdb).get(0).getAtoms();
+        assertEquals(Arrays.asList(1, 4, 5, 6), TestPdbModel.serialNumbers(atoms));
+
+        // microheterogeneity: different residues in alternate locations are never mixed
+        builder.setLength(0);
+        builder.append(new PdbAtomLine(1, "N", 'A', "SER", 'A', 1, ' ', 0, 0, 0, 0.4, 0, "N", "")).append('\n');
+        builder.append(new PdbAtomLine(2, "CA", 'A', "SER", 'A', 1, ' ', 1, 0, 0, 0.4, 0, "C", "")).append('\n');
+        builder.append(new PdbAtomLine(3, "OG", 'A', "SER", 'A', 1, ' ', 2, 0, 0, 0.4, 0, "O", "")).append('\n');
+        builder.append(new PdbAtomLine(4, "N", 'B', "GLY", 'A', 1, ' ', 0, 1, 0, 0.6, 0, "N", "")).append('\n');
+        builder.append(new PdbAtomLine(5, "CA", 'B', "GLY", 'A', 1, ' ', 1, 1, 0, 0.6, 0, "C", "")).append('\n');
+        atoms = new PdbParser(false, options).parse(builder.toString()).get(0).getAtoms();
+        assertEquals(Arrays.asList(4, 5), TestPdbModel.serialNumbers(atoms));
+
+        options.setAlternateLocationPolicy(AlternateLocationPolicy.KEEP_ALL);
+        options.setAlternateLocations(Arrays.asList('B'));
+        atoms = new PdbParser(false, options).parse(pdb).get(0).getAtoms();
+        assertEquals(Arrays.asList(1, 4, 5, 6), TestPdbModel.serialNumbers(atoms));
+    }
+
+    private static List<Integer> serialNumbers(List<PdbAtomLine> atoms) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (PdbAtomLine atom : atoms) {
+            result.add(atom.getSerialNumber());
+        }
+        return result;
+    }
+
+    @Test
+    public void testResidueCollectionViews() throws PdbParsingException {
+        PdbModel model = new PdbParser(false).parse(pdb4A04).get(0);
+
+        PdbChain chain = model.getChains().get(1);
+        ResidueCollectionView chainView = ResidueCollectionView.ofChain(model, chain.getIdentifier());
+        assertEquals(chain.getResidues(), chainView.getResidues());
+        assertEquals(chain.getSequence(), chainView.getSequence());
+
+        PdbModel protein = model.filteredNewInstance(MoleculeType.PROTEIN);
+        ResidueCollectionView proteinView = ResidueCollectionView.ofMoleculeType(model, MoleculeType.PROTEIN);
+        assertEquals(protein.getSequence(), proteinView.getSequence());
+
+        PdbResidue residue = chain.getResidues().get(3);
+        assertTrue(residue == proteinView.findResidue(residue.getResidueIdentifier()));
+        assertEquals(proteinView.getResidues().indexOf(residue), proteinView.indexOf(residue.getResidueIdentifier()));
+
+        List<PdbResidue> residues = model.getResidues();
+        ResidueCollectionView rangeView = ResidueCollectionView.ofRange(chainView, chain.getResidues().get(2).getResidueIdentifier(), chain.getResidues().get(5).getResidueIdentifier());
+        assertEquals(chain.getResidues().subList(2, 6), rangeView.getResidues());
+        assertEquals(1, rangeView.indexOf(residue.getResidueIdentifier()));
+        assertEquals(-1, rangeView.indexOf(residues.get(0).getResidueIdentifier()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testResidueCollectionViewFindOutside() throws PdbParsingException {
+        PdbModel model = new PdbParser(false).parse(pdb4A04).get(0);
+        ResidueCollectionView view = ResidueCollectionView.ofMoleculeType(model, MoleculeType.PROTEIN);
+        PdbChain chain = model.getChains().get(model.getChains().size() - 1);
+        assertEquals(MoleculeType.RNA, chain.getMoleculeType());
+        view.findResidue(chain.getResidues().get(0).getResidueIdentifier());
+    }
+
+    @Test
+    public void testDuplicateResidueIdentifiers() throws PdbParsingException {
+        List<PdbAtomLine> atoms = new ArrayList<PdbAtomLine>();
+        atoms.add(new PdbAtomLine(1, "CA", ' ', "SER", 'A', 1, ' ', 0, 0, 0, 1.0, 0, "C", ""));
+        atoms.add(new PdbAtomLine(2, "CA", ' ', "GLY", 'A', 2, ' ', 1, 0, 0, 1.0, 0, "C", ""));
+        atoms.add(new PdbAtomLine(3, "CA", ' ', "ALA", 'A', 1, ' ', 2, 0, 0, 1.0, 0, "C", ""));
+        PdbModel model = new PdbModel(atoms);
+
+        List<PdbResidue> residues = model.getResidues();
+        assertEquals(3, residues.size());
+
+        // the first occurrence of a duplicated identifier wins
+        PdbResidueIdentifier identifier = new PdbResidueIdentifier('A', 1, ' ');
+        assertEquals(0, model.indexOf(identifier));
+        assertTrue(residues.get(0) == model.findResidue(identifier));
+        assertEquals("SER", model.findResidue('A', 1, ' ').getOriginalResidueName());
+
+        PdbChain chain = model.getChains().get(0);
+        assertEquals(0, chain.indexOf(identifier));
+        assertEquals("SER", chain.findResidue(identifier).getOriginalResidueName());
+    }
+
     @Test
     public void testAmberModel() throws PdbParsingException {
         PdbParser parser = new PdbParser(false);
@@ -0,0 +1,248 @@
+package pl.poznan.put;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.structure.tertiary.StructureFetcher;
+import pl.poznan.put.structure.tertiary.StructureManager;
+import pl.poznan.put.structure.tertiary.StructureMirror;
+
+public class TestStructureManager {
+    private byte[] pdb1EHZ;
+    private PdbModel model1EHZ;
+
+    @Before
+    public void loadPdbFile() throws URISyntaxException, IOException, PdbParsingException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        pdb1EHZ = FileUtils.readFileToByteArray(new File(dir, "../../src/test/resources/1EHZ.pdb"));
+        model1EHZ = new PdbParser(false).parse(new String(pdb1EHZ, "utf-8")).get(0);
+    }
+
+    @Test
+    public void testLoadGzip() throws IOException, PdbParsingException {
+        File file = File.createTempFile("1EHZ", ".pdb.gz");
+        file.deleteOnExit();
+
+        OutputStream stream = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            stream.write(pdb1EHZ);
+        } finally {
+            stream.close();
+        }
+
+        List<PdbModel> models = StructureManager.loadStructure(file);
+        assertEquals(1, models.size());
+        assertTrue(model1EHZ.contentEquals(models.get(0)));
+        StructureManager.remove(file);
+    }
+
+    @Test
+    public void testLoadBgzf() throws IOException, PdbParsingException {
+        File file = File.createTempFile("1EHZ", ".pdb.gz");
+        file.deleteOnExit();
+
+        OutputStream stream = new FileOutputStream(file);
+        try {
+            // small blocks to have many members
+            for (int i = 0; i < pdb1EHZ.length; i += 1000) {
+                TestStructureManager.writeBgzfMember(stream, pdb1EHZ, i, Math.min(1000, pdb1EHZ.length - i));
+            }
+            // end-of-file marker
+            TestStructureManager.writeBgzfMember(stream, pdb1EHZ, 0, 0);
+        } finally {
+            stream.close();
+        }
+
+        List<PdbModel> models = StructureManager.loadStructure(file);
+        assertEquals(1, models.size());
+        assertTrue(model1EHZ.contentEquals(models.get(0)));
+        StructureManager.remove(file);
+    }
+
+    @Test
+    public void testLoadZipArchive() throws IOException, PdbParsingException {
+        File file = File.createTempFile("archive", ".zip");
+        file.deleteOnExit();
+
+        ZipOutputStream stream = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            stream.putNextEntry(new ZipEntry("models/"));
+            stream.putNextEntry(new ZipEntry("models/README.txt"));
+            stream.write("not a structure".getBytes("utf-8"));
+            stream.putNextEntry(new ZipEntry("models/first.pdb"));
+            stream.write(pdb1EHZ);
+            stream.putNextEntry(new ZipEntry("models/second.pdb"));
+            stream.write(pdb1EHZ);
+        } finally {
+            stream.close();
+        }
+
+        List<PdbModel> models = StructureManager.loadArchive(file, 2);
+        assertEquals(2, models.size());
+        assertTrue(model1EHZ.contentEquals(models.get(0)));
+        assertTrue(model1EHZ.contentEquals(models.get(1)));
+        assertEquals(Arrays.asList("models/first", "models/second"), StructureManager.getNames(models));
+        StructureManager.remove(file);
+    }
+
+    @Test
+    public void testLoadTarGzArchive() throws IOException, PdbParsingException {
+        File file = File.createTempFile("archive", ".tar.gz");
+        file.deleteOnExit();
+
+        OutputStream stream = new GZIPOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < 3; i++) {
+                TestStructureManager.writeTarEntry(stream, "model" + i + ".pdb", pdb1EHZ);
+            }
+            stream.write(new byte[1024]);
+        } finally {
+            stream.close();
+        }
+
+        List<PdbModel> models = StructureManager.loadArchive(file, 2);
+        assertEquals(3, models.size());
+        assertTrue(model1EHZ.contentEquals(models.get(2)));
+        assertEquals(Arrays.asList("model0", "model1", "model2"), StructureManager.getNames(models));
+        StructureManager.remove(file);
+    }
+
+    @Test
+    public void testMirror() throws IOException, PdbParsingException, InterruptedException {
+        File directory = File.createTempFile("mirror", "");
+        FileUtils.forceDelete(directory);
+        final AtomicInteger fetchCount = new AtomicInteger();
+        final StructureMirror mirror = new StructureMirror(directory, new StructureFetcher() {
+            @Override
+            public InputStream fetch(String pdbId) throws IOException {
+                fetchCount.incrementAndGet();
+                return new ByteArrayInputStream(pdb1EHZ);
+            }
+        });
+
+        final List<File> files = Collections.synchronizedList(new ArrayList<File>());
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        files.add(mirror.getFile("1EHZ"));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8, files.size());
+        assertEquals(1, fetchCount.get());
+        assertEquals(new File(directory, "eh/1ehz.pdb.gz"), files.get(0));
+
+        StructureMirror previous = StructureManager.getMirror();
+        try {
+            StructureManager.setMirror(mirror);
+            List<PdbModel> models = StructureManager.loadStructure("1ehz");
+            assertEquals(1, models.size());
+            assertTrue(model1EHZ.contentEquals(models.get(0)));
+            assertEquals(1, fetchCount.get());
+        } finally {
+            StructureManager.setMirror(previous);
+            StructureManager.remove(files.get(0));
+            FileUtils.deleteQuietly(directory);
+        }
+    }
+
+    private static void writeTarEntry(OutputStream stream, String name, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        TestStructureManager.putString(header, 0, name);
+        TestStructureManager.putString(header, 100, "0000644");
+        TestStructureManager.putString(header, 124, String.format("%011o", data.length));
+        TestStructureManager.putString(header, 136, "00000000000");
+        TestStructureManager.putString(header, 148, "        ");
+        header[156] = '0';
+        TestStructureManager.putString(header, 257, "ustar");
+        TestStructureManager.putString(header, 263, "00");
+
+        int checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        TestStructureManager.putString(header, 148, String.format("%06o", checksum));
+        header[154] = 0;
+
+        stream.write(header);
+        stream.write(data);
+        stream.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void putString(byte[] header, int offset, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            header[offset + i] = (byte) value.charAt(i);
+        }
+    }
+
+    private static void writeBgzfMember(OutputStream stream, byte[] data, int offset, int length) throws IOException {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data, offset, length);
+        deflater.finish();
+
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        while (!deflater.finished()) {
+            int count = deflater.deflate(buffer);
+            compressed.write(buffer, 0, count);
+        }
+        deflater.end();
+
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        int blockSize = compressed.size() + 25;
+
+        byte[] header = { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0, (byte) (blockSize & 0xff), (byte) (blockSize >> 8) };
+        stream.write(header);
+        compressed.writeTo(stream);
+        TestStructureManager.writeInt(stream, (int) crc.getValue());
+        TestStructureManager.writeInt(stream, length);
+    }
+
+    private static void writeInt(OutputStream stream, int value) throws IOException {
+        stream.write(value & 0xff);
+        stream.write(value >> 8 & 0xff);
+        stream.write(value >> 16 & 0xff);
+        stream.write(value >> 24 & 0xff);
+    }
+}
@@ -0,0 +1,71 @@
+package pl.poznan.put;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.poznan.put.pdb.PdbAtomLine;
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.structure.tertiary.StructureSuperimposer;
+import pl.poznan.put.structure.tertiary.Superposition;
+
+public class TestStructureSuperimposer {
+    private String pdb1EHZ;
+
+    @Before
+    public void loadPdbFile() throws URISyntaxException, IOException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        pdb1EHZ = FileUtils.readFileToString(new File(dir, "../../src/test/resources/1EHZ.pdb"), "utf-8");
+    }
+
+    @Test
+    public void testRotatedCopy() throws PdbParsingException {
+        PdbParser parser = new PdbParser();
+        PdbModel target = parser.parse(pdb1EHZ).get(0);
+
+        // rotate by 90 degrees around Z axis and shift
+        double[] rotation = new double[] { 0, -1, 0, 1, 0, 0, 0, 0, 1 };
+        double[] translation = new double[] { 10, -5, 3 };
+        Superposition move = new Superposition(0, rotation, translation, 0);
+
+        List<PdbAtomLine> atoms = new ArrayList<PdbAtomLine>();
+        for (PdbAtomLine atom : target.getAtoms()) {
+            atoms.add(move.transform(atom));
+        }
+        PdbModel model = new PdbModel(atoms);
+
+        Superposition superposition = StructureSuperimposer.superpose(target, model);
+        assertTrue(superposition.getAtomCount() > 1000);
+        assertEquals(0, superposition.getRmsd(), 1.0e-4);
+        assertEquals(0, StructureSuperimposer.rmsd(target, model), 1.0e-4);
+
+        PdbAtomLine original = target.getAtoms().get(0);
+        PdbAtomLine restored = superposition.transform(model.getAtoms().get(0));
+        assertEquals(original.getX(), restored.getX(), 1.0e-6);
+        assertEquals(original.getY(), restored.getY(), 1.0e-6);
+        assertEquals(original.getZ(), restored.getZ(), 1.0e-6);
+    }
+
+    @SuppressWarnings("static-method")
+    @Test
+    public void testKnownRmsd() {
+        // model is the target stretched along X, no rotation helps here
+        double[] target = new double[] { -1, 0, 0, 1, 0, 0, 0, 2, 0, 0, -2, 0 };
+        double[] model = new double[] { -2, 0, 0, 2, 0, 0, 0, 2, 0, 0, -2, 0 };
+        assertEquals(Math.sqrt(0.5), StructureSuperimposer.rmsd(target, model), 1.0e-6);
+        assertEquals(Math.sqrt(0.5), StructureSuperimposer.superpose(target, model).getRmsd(), 1.0e-6);
+    }
+}
@@ -0,0 +1,131 @@
+package pl.poznan.put;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.Frame;
+import pl.poznan.put.pdb.analysis.MappedFrameStore;
+import pl.poznan.put.pdb.analysis.MappedFrameStore.Precision;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.pdb.analysis.PdbResidue;
+import pl.poznan.put.pdb.analysis.ResidueCollection;
+import pl.poznan.put.pdb.analysis.Topology;
+import pl.poznan.put.rna.torsion.Alpha;
+import pl.poznan.put.rna.torsion.Chi;
+import pl.poznan.put.structure.secondary.CanonicalStructureExtractor;
+import pl.poznan.put.structure.secondary.formats.InvalidSecondaryStructureException;
+import pl.poznan.put.torsion.AtomBasedTorsionAngleType;
+import pl.poznan.put.torsion.TorsionAngleValue;
+
+public class TestTopology {
+    private List<PdbModel> models2MIY;
+
+    @Before
+    public void loadPdbFile() throws URISyntaxException, IOException, PdbParsingException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        String pdb2MIY = FileUtils.readFileToString(new File(dir, "../../src/test/resources/2MIY.pdb"), "utf-8");
+        models2MIY = new PdbParser(false).parse(pdb2MIY);
+    }
+
+    @Test
+    public void testTorsionAnglesPerFrame() {
+        Topology topology = new Topology(models2MIY.get(0));
+
+        for (PdbModel model : models2MIY) {
+            Frame frame = topology.createFrame(model);
+            List<PdbResidue> residues = model.getResidues();
+
+            for (AtomBasedTorsionAngleType angleType : new AtomBasedTorsionAngleType[] { Alpha.getInstance(), Chi.getPurineInstance(), Chi.getPyrimidineInstance() }) {
+                double[] values = topology.calculateTorsionAngles(frame, angleType);
+                assertEquals(residues.size(), values.length);
+
+                for (int i = 0; i < residues.size(); i++) {
+                    TorsionAngleValue expected = angleType.calculate(residues, i);
+                    if (expected.isValid()) {
+                        assertEquals(expected.getValue().getRadians(), values[i], 0.0);
+                    } else {
+                        assertTrue(Double.isNaN(values[i]));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testResiduesPerFrame() throws InvalidSecondaryStructureException {
+        Topology topology = new Topology(models2MIY.get(0));
+        PdbModel model = models2MIY.get(models2MIY.size() - 1);
+        ResidueCollection residues = topology.getResidues(topology.createFrame(model));
+
+        for (int i = 0; i < model.getResidues().size(); i++) {
+            assertTrue(model.getResidues().get(i).contentEquals(residues.getResidues().get(i)));
+        }
+        assertEquals(CanonicalStructureExtractor.getCanonicalSecondaryStructure(model).toString(), CanonicalStructureExtractor.getCanonicalSecondaryStructure(residues).toString());
+    }
+
+    @Test
+    public void testMappedFrameStore() throws IOException, InterruptedException, ExecutionException {
+        final Topology topology = new Topology(models2MIY.get(0));
+        final MappedFrameStore store = MappedFrameStore.fromModels(topology, models2MIY, Precision.DOUBLE);
+        File file = store.getFile();
+
+        try {
+            assertEquals(models2MIY.size(), store.getFrameCount());
+            ExecutorService executor = Executors.newFixedThreadPool(4);
+            List<Future<double[]>> futures = new ArrayList<Future<double[]>>();
+
+            for (int i = 0; i < store.getFrameCount(); i++) {
+                final int frameIndex = i;
+                futures.add(executor.submit(new Callable<double[]>() {
+                    @Override
+                    public double[] call() {
+                        return topology.calculateTorsionAngles(store.getFrame(frameIndex), Alpha.getInstance());
+                    }
+                }));
+            }
+            executor.shutdown();
+
+            for (int i = 0; i < futures.size(); i++) {
+                Frame frame = topology.createFrame(models2MIY.get(i));
+                double[] expected = topology.calculateTorsionAngles(frame, Alpha.getInstance());
+                assertArrayEquals(expected, futures.get(i).get(), 0.0);
+            }
+        } finally {
+            store.close();
+        }
+        assertFalse(file.exists());
+
+        MappedFrameStore floatStore = MappedFrameStore.fromModels(topology, models2MIY.subList(0, 1), Precision.FLOAT);
+        try {
+            Frame frame = topology.getReferenceFrame();
+            Frame stored = floatStore.getFrame(0);
+            for (int i = 0; i < frame.getAtomCount(); i++) {
+                assertEquals((float) frame.getX(i), stored.getX(i), 0.0);
+                assertEquals((float) frame.getZ(i), stored.getZ(i), 0.0);
+            }
+        } finally {
+            floatStore.close();
+        }
+    }
+}
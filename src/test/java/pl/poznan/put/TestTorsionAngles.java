@@ -2,13 +2,37 @@ package pl.poznan.put;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.math3.geometry.euclidean.threed.Vector3D;
 import org.apache.commons.math3.util.FastMath;
 import org.junit.Test;
 
+import pl.poznan.put.circular.Angle;
+import pl.poznan.put.circular.samples.AngleSample;
 import pl.poznan.put.pdb.PdbAtomLine;
 import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.pdb.analysis.PdbResidue;
 import pl.poznan.put.rna.torsion.Beta;
+import pl.poznan.put.rna.torsion.Nu0;
+import pl.poznan.put.rna.torsion.Nu1;
+import pl.poznan.put.rna.torsion.Nu2;
+import pl.poznan.put.rna.torsion.Nu3;
+import pl.poznan.put.rna.torsion.Nu4;
+import pl.poznan.put.rna.torsion.PseudophasePuckerType;
+import pl.poznan.put.rna.torsion.RNATorsionAngleType;
+import pl.poznan.put.torsion.AverageTorsionAngleType;
+import pl.poznan.put.torsion.MasterTorsionAngleType;
+import pl.poznan.put.torsion.TorsionAngleType;
 import pl.poznan.put.torsion.TorsionAngleValue;
 import pl.poznan.put.torsion.TorsionAnglesHelper;
 
@@ -70,4 +94,81 @@ public class TestTorsionAngles {
         assertEquals(TestTorsionAngles.RADIANS, angleValue.getValue().getRadians(), TestTorsionAngles.EPSILON_E6);
         assertEquals(TestTorsionAngles.DEGREES, angleValue.getValue().getDegrees(), TestTorsionAngles.EPSILON_E6);
     }
+
+    @Test
+    public void testAverageOverMainAngles() throws URISyntaxException, IOException, PdbParsingException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        String pdb1EHZ = FileUtils.readFileToString(new File(dir, "../../src/test/resources/1EHZ.pdb"), "utf-8");
+        List<PdbResidue> residues = new PdbParser().parse(pdb1EHZ).get(0).getResidues();
+        AverageTorsionAngleType averageType = RNATorsionAngleType.getAverageOverMainAngles();
+
+        for (int i = 0; i < residues.size(); i++) {
+            List<Angle> angles = new ArrayList<Angle>();
+            List<Angle> validAngles = new ArrayList<Angle>();
+            List<TorsionAngleValue> values = new ArrayList<TorsionAngleValue>();
+
+            for (TorsionAngleType type : residues.get(i).getTorsionAngleTypes()) {
+                for (MasterTorsionAngleType masterType : averageType.getConsideredAngles()) {
+                    if (masterType.getAngleTypes().contains(type)) {
+                        TorsionAngleValue value = type.calculate(residues, i);
+                        angles.add(value.getValue());
+                        values.add(value);
+                        if (value.isValid()) {
+                            validAngles.add(value.getValue());
+                        }
+                    }
+                }
+            }
+
+            TestTorsionAngles.assertSameAngle(new AngleSample(angles).getMeanDirection(), averageType.calculate(residues, i).getValue());
+            TestTorsionAngles.assertSameAngle(new AngleSample(validAngles).getMeanDirection(), averageType.calculate(values).getValue());
+        }
+    }
+
+    @Test
+    public void testKnownValues() throws URISyntaxException, IOException, PdbParsingException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        String pdb1EHZ = FileUtils.readFileToString(new File(dir, "../../src/test/resources/1EHZ.pdb"), "utf-8");
+        List<PdbResidue> residues = new PdbParser().parse(pdb1EHZ).get(0).getResidues();
+        PseudophasePuckerType puckerType = PseudophasePuckerType.getInstance();
+        AverageTorsionAngleType averageType = RNATorsionAngleType.getAverageOverMainAngles();
+
+        for (int i = 0; i < residues.size(); i++) {
+            Map<TorsionAngleType, TorsionAngleValue> knownValues = new HashMap<TorsionAngleType, TorsionAngleValue>();
+            for (TorsionAngleType type : residues.get(i).getTorsionAngleTypes()) {
+                if (type != puckerType) {
+                    knownValues.put(type, type.calculate(residues, i));
+                }
+            }
+            for (TorsionAngleType type : new TorsionAngleType[] { Nu0.getInstance(), Nu1.getInstance(), Nu2.getInstance(), Nu3.getInstance(), Nu4.getInstance() }) {
+                knownValues.put(type, type.calculate(residues, i));
+            }
+
+            TestTorsionAngles.assertSameAngle(puckerType.calculate(residues, i).getValue(), puckerType.calculate(residues, i, knownValues).getValue());
+            TestTorsionAngles.assertSameAngle(averageType.calculate(residues, i).getValue(), averageType.calculate(residues, i, knownValues).getValue());
+        }
+
+        // values from the map must be used instead of the coordinates
+        Map<TorsionAngleType, TorsionAngleValue> sentinels = new HashMap<TorsionAngleType, TorsionAngleValue>();
+        for (TorsionAngleType type : new TorsionAngleType[] { Nu0.getInstance(), Nu2.getInstance(), Nu3.getInstance(), Nu4.getInstance() }) {
+            sentinels.put(type, new TorsionAngleValue(type, new Angle(0.0)));
+        }
+        sentinels.put(Nu1.getInstance(), new TorsionAngleValue(Nu1.getInstance(), new Angle(0.5)));
+        assertEquals(Math.PI / 2, puckerType.calculate(residues, 10, sentinels).getValue().getRadians(), TestTorsionAngles.EPSILON_E6);
+
+        sentinels.clear();
+        for (TorsionAngleType type : residues.get(10).getTorsionAngleTypes()) {
+            sentinels.put(type, new TorsionAngleValue(type, new Angle(0.3)));
+        }
+        assertEquals(0.3, averageType.calculate(residues, 10, sentinels).getValue().getRadians(), TestTorsionAngles.EPSILON_E6);
+    }
+
+    private static void assertSameAngle(Angle expected, Angle actual) {
+        assertEquals(expected.isValid(), actual.isValid());
+        if (expected.isValid()) {
+            assertEquals(0.0, expected.subtract(actual).getRadians(), TestTorsionAngles.EPSILON_E6);
+        }
+    }
 }
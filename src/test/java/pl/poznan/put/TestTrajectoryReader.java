@@ -0,0 +1,209 @@
+package pl.poznan.put;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+import pl.poznan.put.pdb.PdbAtomLine;
+import pl.poznan.put.pdb.PdbParsingException;
+import pl.poznan.put.pdb.analysis.PackedFrame;
+import pl.poznan.put.pdb.analysis.PdbModel;
+import pl.poznan.put.pdb.analysis.PdbParser;
+import pl.poznan.put.pdb.analysis.Topology;
+import pl.poznan.put.pdb.trajectory.TrajectoryReader;
+import pl.poznan.put.rna.torsion.Alpha;
+
+public class TestTrajectoryReader {
+    // 2MIY.xtc has models 1-4 of 2MIY.pdb written by write-xtc.py
+    private static final double[] XTC_PRECISIONS = { 1000.0, 1000.0, 100.0, 1000.0 };
+
+    private List<PdbModel> models2MIY;
+    private File xtc2MIY;
+
+    @Before
+    public void loadPdbFile() throws URISyntaxException, IOException, PdbParsingException {
+        URI uri = getClass().getClassLoader().getResource(".").toURI();
+        File dir = new File(uri);
+        String pdb2MIY = FileUtils.readFileToString(new File(dir, "../../src/test/resources/2MIY.pdb"), "utf-8");
+        models2MIY = new PdbParser(false).parse(pdb2MIY);
+        xtc2MIY = new File(dir, "../../src/test/resources/2MIY.xtc");
+    }
+
+    @Test
+    public void testDcd() throws IOException {
+        File file = File.createTempFile("2MIY", ".dcd");
+        file.deleteOnExit();
+        TestTrajectoryReader.writeDcd(file, models2MIY);
+
+        Topology topology = new Topology(models2MIY.get(0));
+        TrajectoryReader reader = TrajectoryReader.open(file, topology);
+
+        try {
+            assertEquals(models2MIY.size(), reader.getFrameCount());
+
+            int last = models2MIY.size() - 1;
+            List<PdbAtomLine> atoms = models2MIY.get(last).getAtoms();
+            PackedFrame frame = reader.readFrame(last);
+            for (int i = 0; i < atoms.size(); i++) {
+                assertEquals((float) atoms.get(i).getX(), frame.getX(i), 0.0);
+                assertEquals((float) atoms.get(i).getZ(), frame.getZ(i), 0.0);
+            }
+
+            reader.seek(1);
+            reader.setStride(3);
+            double[][] angles = reader.calculateTorsionAngles(topology, Alpha.getInstance());
+            assertEquals((models2MIY.size() - 1 + 2) / 3, angles.length);
+            assertEquals(topology.getResidues().size(), angles[0].length);
+            assertNull(reader.nextFrame());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testXtcUncompressed() throws IOException, PdbParsingException {
+        PdbModel model = new PdbModel(models2MIY.get(0).getAtoms().subList(0, 5));
+        File file = File.createTempFile("small", ".xtc");
+        file.deleteOnExit();
+
+        DataOutputStream stream = new DataOutputStream(new FileOutputStream(file));
+        try {
+            for (int frame = 0; frame < 2; frame++) {
+                stream.writeInt(1995);
+                stream.writeInt(5);
+                stream.writeInt(frame);
+                stream.writeFloat(frame);
+                for (int i = 0; i < 9; i++) {
+                    stream.writeFloat(0);
+                }
+                stream.writeInt(5);
+                for (int i = 0; i < 15; i++) {
+                    stream.writeFloat(frame + i * 0.5f);
+                }
+            }
+        } finally {
+            stream.close();
+        }
+
+        TrajectoryReader reader = TrajectoryReader.open(file, new Topology(model));
+        try {
+            assertEquals(2, reader.getFrameCount());
+            PackedFrame frame = reader.readFrame(1);
+            // nm to Angstroms
+            assertEquals(10.0, frame.getX(0), 1e-6);
+            assertEquals(80.0, frame.getZ(4), 1e-6);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testXtcCompressed() throws IOException {
+        TrajectoryReader reader = TrajectoryReader.open(xtc2MIY, new Topology(models2MIY.get(0)));
+
+        try {
+            assertEquals(TestTrajectoryReader.XTC_PRECISIONS.length, reader.getFrameCount());
+
+            // frames have different sizes, so reading them backwards checks the offsets
+            for (int i = reader.getFrameCount() - 1; i >= 0; i--) {
+                TestTrajectoryReader.assertSameCoordinates(models2MIY.get(i), reader.readFrame(i), TestTrajectoryReader.XTC_PRECISIONS[i]);
+            }
+
+            reader.seek(1);
+            TestTrajectoryReader.assertSameCoordinates(models2MIY.get(1), reader.nextFrame(), TestTrajectoryReader.XTC_PRECISIONS[1]);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testXtcTruncated() throws IOException {
+        byte[] content = FileUtils.readFileToByteArray(xtc2MIY);
+
+        // a part of the frame header only, then a full header with a part of the data
+        for (int partSize : new int[] { 20, 200 }) {
+            File file = File.createTempFile("truncated", ".xtc");
+            file.deleteOnExit();
+            FileOutputStream stream = new FileOutputStream(file);
+            try {
+                stream.write(content);
+                stream.write(content, 0, partSize);
+            } finally {
+                stream.close();
+            }
+
+            TrajectoryReader reader = TrajectoryReader.open(file, new Topology(models2MIY.get(0)));
+            try {
+                int last = TestTrajectoryReader.XTC_PRECISIONS.length - 1;
+                assertEquals(last + 1, reader.getFrameCount());
+                TestTrajectoryReader.assertSameCoordinates(models2MIY.get(last), reader.readFrame(last), TestTrajectoryReader.XTC_PRECISIONS[last]);
+            } finally {
+                reader.close();
+            }
+        }
+    }
+
+    /*
+     * XTC keeps coordinates rounded to 1/precision nm (10/precision A)
+     */
+    private static void assertSameCoordinates(PdbModel model, PackedFrame frame, double precision) {
+        List<PdbAtomLine> atoms = model.getAtoms();
+        double delta = 10.0 / precision;
+        assertEquals(atoms.size(), frame.getAtomCount());
+
+        for (int i = 0; i < atoms.size(); i++) {
+            assertEquals(atoms.get(i).getX(), frame.getX(i), delta);
+            assertEquals(atoms.get(i).getY(), frame.getY(i), delta);
+            assertEquals(atoms.get(i).getZ(), frame.getZ(i), delta);
+        }
+    }
+
+    private static void writeDcd(File file, List<PdbModel> models) throws IOException {
+        int atomCount = models.get(0).getAtoms().size();
+        DataOutputStream stream = new DataOutputStream(new FileOutputStream(file));
+
+        try {
+            // big endian, X-PLOR style (no unit cell)
+            stream.writeInt(84);
+            stream.writeBytes("CORD");
+            stream.writeInt(models.size());
+            for (int i = 1; i < 20; i++) {
+                stream.writeInt(0);
+            }
+            stream.writeInt(84);
+
+            stream.writeInt(84);
+            stream.writeInt(1);
+            stream.writeBytes(String.format("%-80s", "REMARKS test"));
+            stream.writeInt(84);
+
+            stream.writeInt(4);
+            stream.writeInt(atomCount);
+            stream.writeInt(4);
+
+            for (PdbModel model : models) {
+                for (int dimension = 0; dimension < 3; dimension++) {
+                    stream.writeInt(atomCount * 4);
+                    for (PdbAtomLine atom : model.getAtoms()) {
+                        double value = dimension == 0 ? atom.getX() : dimension == 1 ? atom.getY() : atom.getZ();
+                        stream.writeFloat((float) value);
+                    }
+                    stream.writeInt(atomCount * 4);
+                }
+            }
+        } finally {
+            stream.close();
+        }
+    }
+}
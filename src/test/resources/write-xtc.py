@@ -0,0 +1,242 @@
+#!/usr/bin/env python3
+"""Writes 2MIY.xtc used by TestTrajectoryReader.
+
+Models 1-4 of 2MIY.pdb become XTC frames. The compression is a line by line
+port of xdrfile_compress_coord_float() from the xdrfile library (used by
+GROMACS tools and mdtraj), including its float rounding, so the output is
+what these tools write for the same coordinates. The third frame uses a
+lower precision, so frames differ in size.
+
+Usage: python3 write-xtc.py 2MIY.pdb 2MIY.xtc
+"""
+import struct
+import sys
+
+MAGIC = 1995
+MAGICINTS = [0, 0, 0, 0, 0, 0, 0, 0, 0, 8, 10, 12, 16, 20, 25, 32, 40, 50, 64,
+             80, 101, 128, 161, 203, 256, 322, 406, 512, 645, 812, 1024, 1290,
+             1625, 2048, 2580, 3250, 4096, 5060, 6501, 8192, 10321, 13003,
+             16384, 20642, 26007, 32768, 41285, 52015, 65536, 82570, 104031,
+             131072, 165140, 208063, 262144, 330280, 416127, 524287, 660561,
+             832255, 1048576, 1321122, 1664510, 2097152, 2642245, 3329021,
+             4194304, 5284491, 6658042, 8388607, 10568983, 13316085, 16777216]
+FIRSTIDX = 9
+LASTIDX = len(MAGICINTS)
+INT_MAX = 2 ** 31 - 1
+INT_MIN = -2 ** 31
+MODELS = 4
+PRECISIONS = [1000.0, 1000.0, 100.0, 1000.0]
+
+
+def f32(value):
+    return struct.unpack('>f', struct.pack('>f', value))[0]
+
+
+class BitWriter:
+    def __init__(self):
+        self.bits = []
+
+    def sendbits(self, count, value):
+        for i in range(count - 1, -1, -1):
+            self.bits.append((value >> i) & 1)
+
+    def sendints(self, count, sizes, nums):
+        byts = []
+        tmp = nums[0]
+        while True:
+            byts.append(tmp & 0xff)
+            tmp >>= 8
+            if tmp == 0:
+                break
+        for i in range(1, 3):
+            assert nums[i] < sizes[i]
+            tmp = nums[i]
+            for j in range(len(byts)):
+                tmp = byts[j] * sizes[i] + tmp
+                byts[j] = tmp & 0xff
+                tmp >>= 8
+            while tmp != 0:
+                byts.append(tmp & 0xff)
+                tmp >>= 8
+        if count >= len(byts) * 8:
+            for b in byts:
+                self.sendbits(8, b)
+            self.sendbits(count - len(byts) * 8, 0)
+        else:
+            for b in byts[:-1]:
+                self.sendbits(8, b)
+            self.sendbits(count - (len(byts) - 1) * 8, byts[-1])
+
+    def tobytes(self):
+        bits = self.bits + [0] * (-len(self.bits) % 8)
+        return bytes(int(''.join(map(str, bits[i:i + 8])), 2) for i in range(0, len(bits), 8))
+
+
+def sizeofint(size):
+    num, bits = 1, 0
+    while size >= num and bits < 32:
+        bits += 1
+        num <<= 1
+    return bits
+
+
+def sizeofints(sizes):
+    byts = [1]
+    for size in sizes:
+        tmp = 0
+        for j in range(len(byts)):
+            tmp = byts[j] * size + tmp
+            byts[j] = tmp & 0xff
+            tmp >>= 8
+        while tmp != 0:
+            byts.append(tmp & 0xff)
+            tmp >>= 8
+    num, bits = 1, 0
+    while byts[-1] >= num:
+        bits += 1
+        num *= 2
+    return bits + (len(byts) - 1) * 8
+
+
+def compress(coords, precision):
+    size = len(coords) // 3
+    out = struct.pack('>i', size)
+    assert size > 9
+    out += struct.pack('>f', precision)
+
+    ints = []
+    minint = [INT_MAX] * 3
+    maxint = [INT_MIN] * 3
+    mindiff = INT_MAX
+    old = [0, 0, 0]
+    for i in range(size):
+        atom = []
+        for k in range(3):
+            # float * float, + 0.5 in double, stored in a float, truncated
+            value = f32(f32(coords[3 * i + k]) * f32(precision))
+            lf = f32(value + 0.5 if value >= 0.0 else value - 0.5)
+            atom.append(int(lf))
+            minint[k] = min(minint[k], atom[k])
+            maxint[k] = max(maxint[k], atom[k])
+        diff = sum(abs(old[k] - atom[k]) for k in range(3))
+        if diff < mindiff and i > 0:
+            mindiff = diff
+        old = atom
+        ints.extend(atom)
+    out += struct.pack('>3i', *minint) + struct.pack('>3i', *maxint)
+
+    sizeint = [maxint[k] - minint[k] + 1 for k in range(3)]
+    if (sizeint[0] | sizeint[1] | sizeint[2]) > 0xffffff:
+        bitsizeint = [sizeofint(s) for s in sizeint]
+        bitsize = 0
+    else:
+        bitsize = sizeofints(sizeint)
+
+    smallidx = FIRSTIDX
+    while smallidx < LASTIDX and MAGICINTS[smallidx] < mindiff:
+        smallidx += 1
+    out += struct.pack('>i', smallidx)
+
+    maxidx = min(LASTIDX, smallidx + 8)
+    minidx = maxidx - 8
+    smaller = MAGICINTS[max(FIRSTIDX, smallidx - 1)] // 2
+    smallnum = MAGICINTS[smallidx] // 2
+    sizesmall = [MAGICINTS[smallidx]] * 3
+    larger = MAGICINTS[maxidx] // 2
+
+    bw = BitWriter()
+    prevcoord = [0, 0, 0]
+    prevrun = -1
+    i = 0
+    while i < size:
+        is_small = 0
+        t = 3 * i
+        if smallidx < maxidx and i >= 1 and all(abs(ints[t + k] - prevcoord[k]) < larger for k in range(3)):
+            is_smaller = 1
+        elif smallidx > minidx:
+            is_smaller = -1
+        else:
+            is_smaller = 0
+        if i + 1 < size:
+            if all(abs(ints[t + k] - ints[t + 3 + k]) < smallnum for k in range(3)):
+                # interchange first with second atom for better compression of water
+                for k in range(3):
+                    ints[t + k], ints[t + 3 + k] = ints[t + 3 + k], ints[t + k]
+                is_small = 1
+        tmpcoord = [ints[t + k] - minint[k] for k in range(3)]
+        if bitsize == 0:
+            for k in range(3):
+                bw.sendbits(bitsizeint[k], tmpcoord[k])
+        else:
+            bw.sendints(bitsize, sizeint, tmpcoord)
+        prevcoord = ints[t:t + 3]
+        i += 1
+
+        run = 0
+        tmpcoord = []
+        if is_small == 0 and is_smaller == -1:
+            is_smaller = 0
+        while is_small and run < 8 * 3:
+            t = 3 * i
+            tmpsum = sum((ints[t + k] - prevcoord[k]) ** 2 for k in range(3))
+            if is_smaller == -1 and tmpsum >= smaller * smaller:
+                is_smaller = 0
+            tmpcoord.extend(ints[t + k] - prevcoord[k] + smallnum for k in range(3))
+            run += 3
+            prevcoord = ints[t:t + 3]
+            i += 1
+            t = 3 * i
+            is_small = 0
+            if i < size and all(abs(ints[t + k] - prevcoord[k]) < smallnum for k in range(3)):
+                is_small = 1
+        if run != prevrun or is_smaller != 0:
+            prevrun = run
+            bw.sendbits(1, 1)
+            bw.sendbits(5, run + is_smaller + 1)
+        else:
+            bw.sendbits(1, 0)
+        for k in range(0, run, 3):
+            bw.sendints(smallidx, sizesmall, tmpcoord[k:k + 3])
+        if is_smaller != 0:
+            smallidx += is_smaller
+            if is_smaller < 0:
+                smallnum = smaller
+                smaller = MAGICINTS[smallidx - 1] // 2
+            else:
+                smaller = smallnum
+                smallnum = MAGICINTS[smallidx] // 2
+            sizesmall = [MAGICINTS[smallidx]] * 3
+
+    data = bw.tobytes()
+    out += struct.pack('>i', len(data)) + data + b'\0' * (-len(data) % 4)
+    return out
+
+
+def read_models(path):
+    models = []
+    current = []
+    with open(path) as stream:
+        for line in stream:
+            if line.startswith(('ATOM  ', 'HETATM')):
+                current.extend(float(line[c:c + 8]) / 10.0 for c in (30, 38, 46))
+            elif line.startswith('ENDMDL'):
+                models.append(current)
+                current = []
+    if current:
+        models.append(current)
+    return models
+
+
+def main():
+    models = read_models(sys.argv[1])[:MODELS]
+    with open(sys.argv[2], 'wb') as stream:
+        for step, (coords, precision) in enumerate(zip(models, PRECISIONS)):
+            atoms = len(coords) // 3
+            box = [3.5 if k in (0, 4, 8) else 0.0 for k in range(9)]
+            stream.write(struct.pack('>iiif', MAGIC, atoms, step * 1000, step * 2.0))
+            stream.write(struct.pack('>9f', *box))
+            stream.write(compress(coords, precision))
+
+
+if __name__ == '__main__':
+    main()